@@ -0,0 +1,144 @@
+package chess.basictypes;
+
+import java.util.Arrays;
+
+/**
+ * Reads the position fields of a FEN or EPD string straight from a {@link CharSequence}, without allocating: the
+ * board, side to move, castling rights, en passant square and, if present, the halfmove clock and fullmove number. EPD
+ * omits the clocks, in which case they default to 0 and 1.
+ */
+public class FenParser {
+    private FenParser() {}
+
+    // Piece code by FEN letter, EMPTY for every other character
+    private static final byte[] pieceCodeByChar = new byte[128];
+    static {
+        Arrays.fill(pieceCodeByChar, (byte) Position.EMPTY);
+        final var letters = "PNBRQKpnbrqk";
+        for (var i = 0; i < letters.length(); i++) {
+            final var color = Color.valueList().get(i / Piece.Type.count());
+            final var type = Piece.Type.valueList().get(i % Piece.Type.count());
+            pieceCodeByChar[letters.charAt(i)] = (byte) Piece.code(color, type);
+        }
+    }
+
+    /**
+     * Sets up {@code position} from the FEN fields starting at {@code start} and returns the index just past the last
+     * field read, so that callers can go on to parse EPD operations. Skipping validation saves the consistency checks of
+     * {@link Position#validate()} for input that is known to be good; the Zobrist key is computed either way.
+     */
+    public static int parse(final CharSequence fen, final int start, final Position position, final boolean validate) {
+        position.clear();
+        var i = start;
+
+        for (int file = 0, rank = 7; ; i++) {
+            final var c = charAt(fen, i);
+            if (c == ' ') {
+                if (file != 8 || rank != 0) throw error(fen, i);
+                break;
+            }
+            if (c == '/') {
+                if (file != 8 || rank == 0) throw error(fen, i);
+                rank--;
+                file = 0;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+                if (file > 8) throw error(fen, i);
+            } else {
+                final var code = c < pieceCodeByChar.length ? pieceCodeByChar[c] : Position.EMPTY;
+                if (code == Position.EMPTY || file > 7) throw error(fen, i);
+                final var sq = rank << 3 | file++;
+                position.xorBB(code, 1L << sq);
+                position.setPieceCodeAt(sq, code);
+            }
+        }
+        i++;
+
+        switch (charAt(fen, i)) {
+            case 'w':
+                position.setCurrentColor(Color.WHITE);
+                break;
+            case 'b':
+                position.setCurrentColor(Color.BLACK);
+                break;
+            default:
+                throw error(fen, i);
+        }
+        i++;
+        if (charAt(fen, i++) != ' ') throw error(fen, i - 1);
+
+        var castlingRights = CastlingRights.NONE_ALLOWED;
+        if (charAt(fen, i) == '-') {
+            i++;
+        } else {
+            for (char c; (c = charAt(fen, i)) != ' '; i++) {
+                switch (c) {
+                    case 'K':
+                        castlingRights = castlingRights.allow(Color.WHITE, CastlingDirection.OO);
+                        break;
+                    case 'Q':
+                        castlingRights = castlingRights.allow(Color.WHITE, CastlingDirection.OOO);
+                        break;
+                    case 'k':
+                        castlingRights = castlingRights.allow(Color.BLACK, CastlingDirection.OO);
+                        break;
+                    case 'q':
+                        castlingRights = castlingRights.allow(Color.BLACK, CastlingDirection.OOO);
+                        break;
+                    default:
+                        throw error(fen, i);
+                }
+            }
+        }
+        position.setCastlingRights(castlingRights);
+        if (charAt(fen, i++) != ' ') throw error(fen, i - 1);
+
+        if (charAt(fen, i) == '-') {
+            position.setEpIndex(Position.NO_SQUARE);
+            i++;
+        } else {
+            final var file = charAt(fen, i) - 'a';
+            final var rank = charAt(fen, i + 1) - '1';
+            if (file < 0 || file > 7 || rank != 2 && rank != 5) throw error(fen, i);
+            position.setEpIndex(rank << 3 | file);
+            i += 2;
+        }
+
+        var halfmoveClock = 0;
+        var fullmoveCounter = 1;
+        if (isClockAt(fen, i)) {
+            for (i++; isDigitAt(fen, i); i++)
+                halfmoveClock = 10 * halfmoveClock + fen.charAt(i) - '0';
+            if (isClockAt(fen, i)) {
+                fullmoveCounter = 0;
+                for (i++; isDigitAt(fen, i); i++)
+                    fullmoveCounter = 10 * fullmoveCounter + fen.charAt(i) - '0';
+            }
+        }
+        if (i < fen.length() && fen.charAt(i) != ' ' && fen.charAt(i) != ';') throw error(fen, i);
+        position.setHalfmoveClock(halfmoveClock);
+        // Some tools write a fullmove number of 0
+        position.setFullmoveCounter(Math.max(fullmoveCounter, 1));
+
+        position.completeSetup(validate);
+        return i;
+    }
+
+    private static char charAt(final CharSequence fen, final int i) {
+        if (i >= fen.length()) throw new IllegalArgumentException("FEN error: unexpected end at " + i);
+        return fen.charAt(i);
+    }
+
+    private static boolean isDigitAt(final CharSequence fen, final int i) {
+        return i < fen.length() && fen.charAt(i) >= '0' && fen.charAt(i) <= '9';
+    }
+
+    /** Tests whether a space and a number follow the field that ends at {@code i}. */
+    private static boolean isClockAt(final CharSequence fen, final int i) {
+        return i < fen.length() && fen.charAt(i) == ' ' && isDigitAt(fen, i + 1);
+    }
+
+    private static IllegalArgumentException error(final CharSequence fen, final int i) {
+        return new IllegalArgumentException("FEN error at " + i + ": '" + fen.charAt(i) + "'");
+    }
+}
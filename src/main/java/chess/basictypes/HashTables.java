@@ -0,0 +1,19 @@
+package chess.basictypes;
+
+/** Sizing shared by the tables indexed by Zobrist key, which are arrays of a power-of-two number of buckets. */
+public class HashTables {
+    private HashTables() {}
+
+    public static final int MIN_SIZE_MB = 1;
+    /** The largest size a long array can take in a power of two: 2^30 longs. */
+    public static final int MAX_SIZE_MB = 8192;
+
+    /**
+     * Returns the largest power-of-two number of buckets of {@code bucketBytes} each, a power of two itself, that fits
+     * in {@code megabytes}, which is clamped to {@link #MIN_SIZE_MB} - {@link #MAX_SIZE_MB}.
+     */
+    public static int bucketCount(final int megabytes, final int bucketBytes) {
+        final var bytes = (long) Math.max(MIN_SIZE_MB, Math.min(megabytes, MAX_SIZE_MB)) << 20;
+        return (int) Long.highestOneBit(bytes / bucketBytes);
+    }
+}
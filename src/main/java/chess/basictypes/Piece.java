@@ -18,14 +18,57 @@ public enum Piece {
         valueListByColor = Collections.unmodifiableList(temp);
     }
 
-    public Color color() { return ordinal() <= WK.ordinal() ? Color.WHITE : Color.BLACK; }
+    // Plain arrays so that hot code can go from a piece or its code to its parts without List calls or division
+    private static final Piece[] byCode = values();
+    private static final Color[] colorByCode = new Color[byCode.length];
+    private static final Type[] typeByCode = new Type[byCode.length];
+    static {
+        for (final var piece : byCode) {
+            colorByCode[piece.ordinal()] = piece.ordinal() <= WK.ordinal() ? Color.WHITE : Color.BLACK;
+            typeByCode[piece.ordinal()] = Type.valueList.get(piece.ordinal() % Type.count());
+        }
+    }
+
+    public Color color() { return colorByCode[ordinal()]; }
 
-    public Type type() { return Type.valueList.get(ordinal() % Type.count()); }
+    public Type type() { return typeByCode[ordinal()]; }
 
     public static Piece of(final Color color, final Type type) {
-        return valueList.get(color.ordinal() * Type.count() + type.ordinal());
+        return byCode[code(color, type)];
+    }
+
+    //region Piece Codes
+
+    // A piece code is a piece's ordinal, 0 to 11. It is what the mailbox stores and what int-based hot code passes
+    // around; the enum API stays for everything else.
+
+    public static int code(final Color color, final Type type) {
+        return color.ordinal() * 6 + type.ordinal();
+    }
+
+    /** Returns the piece with the given code, or null for a negative code such as {@link Position#EMPTY}. */
+    public static Piece fromCode(final int code) {
+        return code < 0 ? null : byCode[code];
     }
 
+    public static int colorCode(final int code) {
+        return code >= 6 ? 1 : 0;
+    }
+
+    public static int typeCode(final int code) {
+        return code >= 6 ? code - 6 : code;
+    }
+
+    public static Color colorOf(final int code) {
+        return colorByCode[code];
+    }
+
+    public static Type typeOf(final int code) {
+        return typeByCode[code];
+    }
+
+    //endregion
+
     public static List<Piece> valueList() { return valueList; }
 
     public static List<Piece> valueList(final Color color) { return valueListByColor.get(color.ordinal()); }
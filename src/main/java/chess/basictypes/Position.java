@@ -1,6 +1,6 @@
 package chess.basictypes;
 
-import chess.move.Move;
+import chess.move.PackedMove;
 
 import java.util.Arrays;
 import java.util.Objects;
@@ -8,16 +8,31 @@ import java.util.Objects;
 public class Position {
     public static String STARTPOS_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
 
+    /** The mailbox code of an empty square. */
+    public static final int EMPTY = -1;
+    /** The en passant index when there is no en passant square. */
+    public static final int NO_SQUARE = -1;
+
     //region Fields/Constructors/Accessors
 
     private Color currentColor = Color.WHITE;
     private CastlingRights castlingRights = CastlingRights.NONE_ALLOWED;
-    private Square epSquare;
+    private int epIndex = NO_SQUARE;
     private int halfmoveClock;
     private int fullmoveCounter;
+    private long key;
 
     private final long[] pieceBBs = new long[Piece.count()];
-    private final Piece[] pieceArray = new Piece[Square.count()];
+    private final long[] colorBBs = new long[Color.count()];
+    private long occupiedBB;
+    private final byte[] mailbox = new byte[Square.count()];
+
+    public Position() {}
+
+    /** Creates an independent copy of a position, including its undo stack. */
+    public Position(final Position other) {
+        copyFrom(other);
+    }
 
     public Color getCurrentColor() {
         return currentColor;
@@ -36,13 +51,23 @@ public class Position {
     }
 
     public Square getEpSquare() {
-        return epSquare;
+        return epIndex == NO_SQUARE ? null : Square.of(epIndex);
     }
 
     public void setEpSquare(final Square epSquare) {
         if (epSquare != null && epSquare.rank() != 2 && epSquare.rank() != 5)
             throw new IllegalArgumentException("En passant square must be on rank 3 or 6");
-        this.epSquare = epSquare;
+        this.epIndex = epSquare == null ? NO_SQUARE : epSquare.ordinal();
+    }
+
+    /** Returns the index of the en passant square, or {@link #NO_SQUARE}. */
+    public int getEpIndex() {
+        return epIndex;
+    }
+
+    public void setEpIndex(final int epIndex) {
+        assert epIndex == NO_SQUARE || Square.rank(epIndex) == 2 || Square.rank(epIndex) == 5;
+        this.epIndex = epIndex;
     }
 
     public int getHalfmoveClock() {
@@ -63,174 +88,135 @@ public class Position {
         this.fullmoveCounter = fullmoveCounter;
     }
 
+    /**
+     * Returns the position's Zobrist key. The setters below do not touch it: {@link #applyFen(String)} computes it
+     * from scratch, making a move updates it through {@link #xorKey(long)} and {@link #popUndo()} restores it.
+     */
+    public long getKey() {
+        return key;
+    }
+
+    public void xorKey(final long keys) {
+        key ^= keys;
+    }
+
     public long getBB(final Piece piece) {
         return pieceBBs[piece.ordinal()];
     }
 
+    public long getBB(final int pieceCode) {
+        return pieceBBs[pieceCode];
+    }
+
     public long getBB(final Color color, final Piece.Type type) {
-        return getBB(Piece.of(color, type));
+        return pieceBBs[Piece.code(color, type)];
     }
 
     public long getBB(final Color color) {
-        return Piece.Type.valueList().stream()
-            .map(t -> pieceBBs[Piece.of(color, t).ordinal()])
-            .reduce(0L, (x, y) -> x | y);
+        return colorBBs[color.ordinal()];
     }
 
     public long getBB() {
-        return Arrays.stream(pieceBBs).reduce(0L, (x, y) -> x | y);
+        return occupiedBB;
     }
 
     public void xorBB(final Piece piece, final long bitboard) {
-        pieceBBs[piece.ordinal()] ^= bitboard;
+        xorBB(piece.ordinal(), bitboard);
+    }
+
+    /** Toggles squares of a piece's bitboard, keeping the color and occupancy bitboards in step. */
+    public void xorBB(final int pieceCode, final long bitboard) {
+        pieceBBs[pieceCode] ^= bitboard;
+        colorBBs[Piece.colorCode(pieceCode)] ^= bitboard;
+        occupiedBB ^= bitboard;
     }
 
     public Piece getPieceAt(final Square square) {
-        return pieceArray[square.ordinal()];
+        return Piece.fromCode(mailbox[square.ordinal()]);
     }
 
     public void setPieceAt(final Square square, final Piece piece) {
-        pieceArray[square.ordinal()] = piece;
+        mailbox[square.ordinal()] = (byte) (piece == null ? EMPTY : piece.ordinal());
+    }
+
+    /** Returns the code of the piece on the square with the given index, or {@link #EMPTY}. */
+    public int getPieceCodeAt(final int square) {
+        return mailbox[square];
+    }
+
+    public void setPieceCodeAt(final int square, final int pieceCode) {
+        mailbox[square] = (byte) pieceCode;
     }
 
     public Square getKingSquare(final Color color) {
-        return Square.valueList().get(
-            Bitboard.bitScan(
-                pieceBBs[Piece.of(color, Piece.Type.KING).ordinal()]
-            )
-        );
+        return Square.of(getKingIndex(color));
+    }
+
+    public int getKingIndex(final Color color) {
+        return Bitboard.bitScan(pieceBBs[Piece.code(color, Piece.Type.KING)]);
     }
 
     //endregion
 
     //region General
 
-    public Position applyFen(final String fen) {
-        var i = 0;
-
+    /** Empties the board and the undo stack ahead of setting up a new position. */
+    void clear() {
         Arrays.fill(pieceBBs, 0L);
-        Arrays.fill(pieceArray, null);
-        for (
-            int c, file = 0, rank = 7
-            ; (c = fen.charAt(i)) != ' ' && rank >= 0
-            ; i++
-        ) {
-            if (c == '/') {
-                rank--;
-                file = 0;
-            } else if ("12345678".indexOf(c) != -1) {
-                file += c - '0';
-            } else if ("PNBRQKpnbrqk".indexOf(c) != -1) {
-                final var color = Color.valueList().get(c >>> 5 & 1);
-                final Piece.Type type;
-                switch (Character.toUpperCase(c)) {
-                    case 'P':
-                        type = Piece.Type.PAWN;
-                        break;
-                    case 'N':
-                        type = Piece.Type.KNIGHT;
-                        break;
-                    case 'B':
-                        type = Piece.Type.BISHOP;
-                        break;
-                    case 'R':
-                        type = Piece.Type.ROOK;
-                        break;
-                    case 'Q':
-                        type = Piece.Type.QUEEN;
-                        break;
-                    default:
-                        type = Piece.Type.KING;
-                        break;
-                }
-                final var piece = Piece.of(color, type);
-                final var sq = Square.at(file++, rank);
-                final var sqbb = Bitboard.fromSquare(sq);
-                pieceBBs[piece.ordinal()] |= sqbb;
-                pieceArray[sq.ordinal()] = piece;
-            } else {
-                throw new IllegalArgumentException("FEN error at " + i + ": '" + c + "'");
-            }
-        }
-        i++;
-
-        switch (fen.charAt(i)) {
-            case 'w':
-                currentColor = Color.WHITE;
-                break;
-            case 'b':
-                currentColor = Color.BLACK;
-                break;
-            default:
-                throw new IllegalArgumentException("FEN error at " + i + ": '" + fen.charAt(i) + "'");
-        }
-        i += 2;
+        Arrays.fill(colorBBs, 0L);
+        occupiedBB = 0L;
+        Arrays.fill(mailbox, (byte) EMPTY);
+        undoCount = 0;
+    }
 
-        castlingRights = CastlingRights.NONE_ALLOWED;
-        for (char c; (c = fen.charAt(i)) != ' '; i++) {
-            if (c == '-') {
-                i++;
-                break;
-            }
-            final Color color;
-            final CastlingDirection direction;
-            switch (c) {
-                case 'K':
-                    color = Color.WHITE;
-                    direction = CastlingDirection.OO;
-                    break;
-                case 'Q':
-                    color = Color.WHITE;
-                    direction = CastlingDirection.OOO;
-                    break;
-                case 'k':
-                    color = Color.BLACK;
-                    direction = CastlingDirection.OO;
-                    break;
-                case 'q':
-                    color = Color.BLACK;
-                    direction = CastlingDirection.OOO;
-                    break;
-                default:
-                    throw new IllegalArgumentException("FEN error at " + i + ": '" + c + "'");
-            }
-            castlingRights = castlingRights.allow(color, direction);
+    /** Optionally checks a freshly set up position, then computes its key from scratch. */
+    void completeSetup(final boolean validate) {
+        if (validate) {
+            final var errorMsg = validate();
+            if (errorMsg != null)
+                throw new IllegalStateException(errorMsg);
         }
-        i++;
 
-        if (fen.charAt(i) == '-') {
-            epSquare = null;
-        } else {
-            final var file = fen.charAt(i) - 'a';
-            final var rank = fen.charAt(++i) - '1';
-            if (file < 0 || file > 7 || rank < 0 || rank > 7)
-                throw new IllegalArgumentException("FEN error: bad EP Square");
-            epSquare = Square.at(file, rank);
-        }
-        i += 2;
-
-        halfmoveClock = 0;
-        for (char c; (c = fen.charAt(i)) != ' '; i++) {
-            if (!Character.isDigit(c))
-                throw new IllegalArgumentException("FEN error at " + i + ": '" + c + "'");
-            halfmoveClock *= 10;
-            halfmoveClock += c - '0';
-        }
-        i++;
-
-        fullmoveCounter = 0;
-        for (; i < fen.length(); i++) {
-            final var c = fen.charAt(i);
-            if (!Character.isDigit(c))
-                throw new IllegalArgumentException("FEN error at " + i + ": '" + c + "'");
-            fullmoveCounter *= 10;
-            fullmoveCounter += c - '0';
-        }
+        key = Zobrist.hash(this);
+    }
 
-        final var errorMsg = validate();
-        if (errorMsg != null)
-            throw new IllegalStateException(errorMsg);
+    /** Sets up the position from a FEN string. The clocks may be left out, as in EPD, but nothing may follow them. */
+    public Position applyFen(final String fen) {
+        final var end = FenParser.parse(fen, 0, this, true);
+        if (end != fen.length())
+            throw new IllegalArgumentException("FEN error at " + end + ": '" + fen.charAt(end) + "'");
+        return this;
+    }
 
+    /**
+     * Overwrites this position with another one without allocating, unless the other position's undo stack does not fit
+     * in this one's. Everything is copied in bulk: the bitboards, the mailbox, the scalar state and the live part of the
+     * undo stack, so that repetition detection and {@link #getUndoCount()} carry over.
+     */
+    public Position copyFrom(final Position other) {
+        currentColor = other.currentColor;
+        castlingRights = other.castlingRights;
+        epIndex = other.epIndex;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveCounter = other.fullmoveCounter;
+        key = other.key;
+
+        System.arraycopy(other.pieceBBs, 0, pieceBBs, 0, pieceBBs.length);
+        System.arraycopy(other.colorBBs, 0, colorBBs, 0, colorBBs.length);
+        occupiedBB = other.occupiedBB;
+        System.arraycopy(other.mailbox, 0, mailbox, 0, mailbox.length);
+
+        undoCount = other.undoCount;
+        if (undoMoves.length < undoCount) {
+            undoMoves = new int[other.undoMoves.length];
+            undoStates = new int[other.undoMoves.length];
+            undoClocks = new int[other.undoMoves.length];
+            undoKeys = new long[other.undoMoves.length];
+        }
+        System.arraycopy(other.undoMoves, 0, undoMoves, 0, undoCount);
+        System.arraycopy(other.undoStates, 0, undoStates, 0, undoCount);
+        System.arraycopy(other.undoClocks, 0, undoClocks, 0, undoCount);
+        System.arraycopy(other.undoKeys, 0, undoKeys, 0, undoCount);
         return this;
     }
 
@@ -241,7 +227,7 @@ public class Position {
             var skip = 0;
             for (var file = 0; file <= 7; file++) {
                 final var sq = Square.at(file, rank);
-                final var piece = pieceArray[sq.ordinal()];
+                final var piece = Piece.fromCode(mailbox[sq.ordinal()]);
                 if (piece == null) {
                     skip++;
                 } else {
@@ -268,7 +254,7 @@ public class Position {
                             label = 'K';
                             break;
                     }
-                    sb.append(piece.color() == Color.WHITE ? label : Character.toUpperCase(label));
+                    sb.append(piece.color() == Color.WHITE ? label : Character.toLowerCase(label));
                 }
             }
             if (skip > 0) sb.append(skip);
@@ -288,7 +274,7 @@ public class Position {
         }
         sb.append(' ');
 
-        sb.append(epSquare == null ? '-' : epSquare.name().toLowerCase());
+        sb.append(epIndex == NO_SQUARE ? "-" : Square.of(epIndex).name().toLowerCase());
         sb.append(' ');
 
         sb.append(halfmoveClock);
@@ -306,7 +292,7 @@ public class Position {
         for (var rank = 7; rank >= 0; rank--) {
             System.out.print(rank + 1);
             for (var file = 0; file < 8; file++) {
-                final var piece = pieceArray[Square.at(file, rank).ordinal()];
+                final var piece = Piece.fromCode(mailbox[Square.at(file, rank).ordinal()]);
                 if (piece == null) {
                     System.out.print(" | -");
                 } else {
@@ -325,69 +311,105 @@ public class Position {
         if (currentColor == null)
             return "currentColor is null";
 
-        for (final var sq : Square.valueList()) {
-            final var sqbb = Bitboard.fromSquare(sq);
-            final var piece = pieceArray[sq.ordinal()];
-            if (piece == null) {
-                if (0 != (getBB() & sqbb))
-                    return "boardArray does not match pieceBBs at square " + sq.name();
-            } else if (0 == (getBB(piece) & sqbb)) {
-                return "boardArray does not match pieceBBs at square " + sq.name();
+        var occupied = 0L;
+        var whiteOccupied = 0L;
+        for (var code = 0; code < pieceBBs.length; code++) {
+            if (0 != (occupied & pieceBBs[code]))
+                return "pieceBBs overlap on " + Long.toHexString(occupied & pieceBBs[code]);
+            occupied |= pieceBBs[code];
+            if (Piece.colorOf(code) == Color.WHITE) whiteOccupied |= pieceBBs[code];
+            for (var bb = pieceBBs[code]; bb != 0; bb &= bb - 1) {
+                if (mailbox[Bitboard.bitScan(bb)] != code)
+                    return "boardArray does not match pieceBBs at square " + Square.of(Bitboard.bitScan(bb)).name();
             }
         }
+        for (var sq = 0; sq < mailbox.length; sq++) {
+            if ((mailbox[sq] == EMPTY) != (0 == (occupied & 1L << sq)))
+                return "boardArray does not match pieceBBs at square " + Square.of(sq).name();
+        }
+
+        if (whiteOccupied != colorBBs[Color.WHITE.ordinal()])
+            return "colorBBs does not match pieceBBs for WHITE";
+        if ((occupied ^ whiteOccupied) != colorBBs[Color.BLACK.ordinal()])
+            return "colorBBs does not match pieceBBs for BLACK";
+        if (occupied != occupiedBB)
+            return "occupiedBB does not match pieceBBs";
 
         return null;
     }
 
     //endregion
 
-    public static class Snapshot {
-        private final Move move;
-        private final Piece capturedPiece;
-        private final long key;
-        private final CastlingRights castlingRights;
-        private final Square epSquare;
-        private final int halfmoveClock;
-
-        public Snapshot(
-            final Move move,
-            final Piece capturedPiece,
-            final long key,
-            final CastlingRights castlingRights,
-            final Square epSquare,
-            final int halfmoveClock
-        ) {
-            assert !move.isEnpassantCapture() || capturedPiece == null;
-            this.move = move;
-            this.capturedPiece = capturedPiece;
-            this.key = key;
-            this.castlingRights = Objects.requireNonNull(castlingRights);
-            this.epSquare = epSquare;
-            this.halfmoveClock = halfmoveClock;
-        }
+    //region Undo Stack
 
-        public Move getMove() {
-            return move;
-        }
+    private static final int INITIAL_UNDO_CAPACITY = 256;
 
-        public Piece getCapturedPiece() {
-            return capturedPiece;
-        }
+    // One record per move made since the last applyFen: the move, the key and halfmove clock before it, and the
+    // captured piece, castling rights and en passant square packed into an int. The clock gets its own slot because
+    // positions may be set up with any clock. The arrays only grow if a game outlasts them, so making a move allocates
+    // nothing.
+    private int[] undoMoves = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoStates = new int[INITIAL_UNDO_CAPACITY];
+    private int[] undoClocks = new int[INITIAL_UNDO_CAPACITY];
+    private long[] undoKeys = new long[INITIAL_UNDO_CAPACITY];
+    private int undoCount;
 
-        public long getKey() {
-            return key;
-        }
+    /** Returns the number of moves made since the position was set up. */
+    public int getUndoCount() {
+        return undoCount;
+    }
 
-        public CastlingRights getCastlingRights() {
-            return castlingRights;
+    /** Records the move about to be made along with the state that making it will overwrite. */
+    public void pushUndo(final int move, final int capturedCode) {
+        if (undoCount == undoMoves.length) {
+            undoMoves = Arrays.copyOf(undoMoves, 2 * undoCount);
+            undoStates = Arrays.copyOf(undoStates, 2 * undoCount);
+            undoClocks = Arrays.copyOf(undoClocks, 2 * undoCount);
+            undoKeys = Arrays.copyOf(undoKeys, 2 * undoCount);
         }
+        undoMoves[undoCount] = move;
+        undoStates[undoCount]
+            = capturedCode + 1
+            | castlingRights.getOrdinal() << 4
+            | epIndex + 1 << 8;
+        undoClocks[undoCount] = halfmoveClock;
+        undoKeys[undoCount] = key;
+        undoCount++;
+    }
 
-        public Square getEpSquare() {
-            return epSquare;
-        }
+    /** Returns the last move made, or {@link PackedMove#NONE} if it was a null move. */
+    public int getLastMove() {
+        return undoMoves[undoCount - 1];
+    }
+
+    /** Returns the code of the piece the last move captured, or {@link #EMPTY}. En passant records no capture. */
+    public int getLastCapturedCode() {
+        return (undoStates[undoCount - 1] & 0xf) - 1;
+    }
 
-        public int getHalfmoveClock() {
-            return halfmoveClock;
+    /** Restores the castling rights, en passant square, halfmove clock and key from before the last move. */
+    public void popUndo() {
+        undoCount--;
+        final var state = undoStates[undoCount];
+        castlingRights = CastlingRights.fromOrdinal(state >>> 4 & 0xf);
+        epIndex = (state >>> 8 & 0x7f) - 1;
+        halfmoveClock = undoClocks[undoCount];
+        key = undoKeys[undoCount];
+    }
+
+    /**
+     * Tests whether the current position occurred before with the same side to move, looking back only as far as the
+     * halfmove clock allows and no further than the moves on the undo stack. The scan also stops at the most recent
+     * null move, since a line that passes the turn does not really return to the positions before it.
+     */
+    public boolean isRepetition() {
+        final var oldest = Math.max(undoCount - halfmoveClock, 0);
+        for (var i = undoCount - 1; i >= oldest; i--) {
+            if (undoMoves[i] == PackedMove.NONE) return false;
+            if (((undoCount - i) & 1) == 0 && undoKeys[i] == key) return true;
         }
+        return false;
     }
+
+    //endregion
 }
@@ -0,0 +1,111 @@
+package chess.basictypes;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * A fixed-size binary encoding of a position, {@value #BYTES} bytes per record:
+ * <ul>
+ * <li>the occupancy bitboard (8 bytes),</li>
+ * <li>the piece code of every occupied square in square order, two to a byte with the first in the low nibble
+ * (16 bytes, room for the 32 pieces a legal position can hold),</li>
+ * <li>the side to move in bit 0, the castling rights ordinal in bits 1-4 and the en passant file plus one (0 for none)
+ * in bits 5-8 (2 bytes),</li>
+ * <li>the halfmove clock (2 bytes) and the fullmove counter (4 bytes).</li>
+ * </ul>
+ * Multi-byte fields use the buffer's byte order, so a buffer must be read with the order it was written with. The undo
+ * stack is not encoded: a decoded position starts a new game history.
+ */
+public class PositionCodec {
+    private PositionCodec() {}
+
+    public static final int BYTES = 32;
+
+    private static final int PIECE_BYTES = 16;
+    private static final int MAX_PIECES = 2 * PIECE_BYTES;
+    private static final int MAX_HALFMOVE_CLOCK = 0xffff;
+
+    /** Writes one record at the buffer's position and advances it. */
+    public static void encode(final Position position, final ByteBuffer buffer) {
+        final var occupiedBB = position.getBB();
+        if (Long.bitCount(occupiedBB) > MAX_PIECES)
+            throw new IllegalArgumentException("Cannot encode more than " + MAX_PIECES + " pieces");
+        if (position.getHalfmoveClock() > MAX_HALFMOVE_CLOCK)
+            throw new IllegalArgumentException("Cannot encode a halfmove clock above " + MAX_HALFMOVE_CLOCK);
+        buffer.putLong(occupiedBB);
+
+        var packed = 0;
+        var count = 0;
+        for (var bb = occupiedBB; bb != 0; bb &= bb - 1) {
+            packed |= position.getPieceCodeAt(Bitboard.bitScan(bb)) << 4 * (count & 1);
+            if ((++count & 1) == 0) {
+                buffer.put((byte) packed);
+                packed = 0;
+            }
+        }
+        for (; count < MAX_PIECES; count += 2) {
+            buffer.put((byte) packed);
+            packed = 0;
+        }
+
+        final var epIndex = position.getEpIndex();
+        buffer.putShort((short) (
+            position.getCurrentColor().ordinal()
+                | position.getCastlingRights().getOrdinal() << 1
+                | (epIndex == Position.NO_SQUARE ? 0 : Square.file(epIndex) + 1) << 5
+        ));
+        buffer.putShort((short) position.getHalfmoveClock());
+        buffer.putInt(position.getFullmoveCounter());
+    }
+
+    /** Reads one record at the buffer's position into {@code position}, advancing the buffer, and returns it. */
+    public static Position decode(final ByteBuffer buffer, final Position position) {
+        position.clear();
+
+        final var occupiedBB = buffer.getLong();
+        if (Long.bitCount(occupiedBB) > MAX_PIECES)
+            throw new IllegalArgumentException("Corrupt record: more than " + MAX_PIECES + " pieces");
+
+        var packed = 0;
+        var count = 0;
+        for (var bb = occupiedBB; bb != 0; bb &= bb - 1) {
+            if ((count & 1) == 0) packed = buffer.get();
+            final var code = packed >>> 4 * (count++ & 1) & 0xf;
+            if (code >= Piece.count())
+                throw new IllegalArgumentException("Corrupt record: bad piece code " + code);
+            position.xorBB(code, Long.lowestOneBit(bb));
+            position.setPieceCodeAt(Bitboard.bitScan(bb), code);
+        }
+        buffer.position(buffer.position() + PIECE_BYTES - (count + 1) / 2);
+
+        final var flags = buffer.getShort();
+        final var color = Color.valueList().get(flags & 1);
+        final var epFile = (flags >>> 5 & 0xf) - 1;
+        if (epFile > 7)
+            throw new IllegalArgumentException("Corrupt record: bad en passant file " + epFile);
+        position.setCurrentColor(color);
+        position.setCastlingRights(CastlingRights.fromOrdinal(flags >>> 1 & 0xf));
+        position.setEpSquare(epFile < 0 ? null : Square.at(epFile, color == Color.WHITE ? 5 : 2));
+        position.setHalfmoveClock(buffer.getShort() & 0xffff);
+        position.setFullmoveCounter(buffer.getInt());
+
+        position.completeSetup(true);
+        return position;
+    }
+
+    /** Writes one record per position, back to back, starting at the buffer's position. */
+    public static void encodeAll(final Iterable<Position> positions, final ByteBuffer buffer) {
+        for (final var position : positions)
+            encode(position, buffer);
+    }
+
+    /**
+     * Decodes every whole record left in the buffer, handing each to {@code consumer}. The same position object is
+     * reused for every record, so a consumer that keeps one must copy it first.
+     */
+    public static void decodeAll(final ByteBuffer buffer, final Consumer<Position> consumer) {
+        final var position = new Position();
+        while (buffer.remaining() >= BYTES)
+            consumer.accept(decode(buffer, position));
+    }
+}
@@ -15,6 +15,7 @@ public enum Square {
     A8, B8, C8, D8, E8, F8, G8, H8;
 
     private static final List<Square> valueList = Collections.unmodifiableList(Arrays.asList(values()));
+    private static final Square[] byIndex = values();
 
     public int file() { return ordinal() & 0b111; }
 
@@ -32,6 +33,13 @@ public enum Square {
         return valueList.get(file | rank << 3);
     }
 
+    /** Returns the square with the given index, 0 for a1 to 63 for h8, without the checks {@link #at} makes. */
+    public static Square of(final int index) { return byIndex[index]; }
+
+    public static int file(final int index) { return index & 0b111; }
+
+    public static int rank(final int index) { return index >>> 3; }
+
     public static List<Square> valueList() { return valueList; }
 
     public static int count() { return valueList.size(); }
@@ -23,22 +23,45 @@ public class Zobrist {
             epFileKeys[i] = rng.nextLong();
     }
 
-    // We are completely defeating the point of Zobrist hashing here by having this function instead of incrementally
-    // updating the position key. That's okay because speed is not the focus of this engine.
+    public static long pieceKey(final Piece piece, final Square square) {
+        return squarePieceKeys[square.ordinal()][piece.ordinal()];
+    }
+
+    public static long pieceKey(final int pieceCode, final int square) {
+        return squarePieceKeys[square][pieceCode];
+    }
+
+    public static long castlingRightsKey(final CastlingRights castlingRights) {
+        return castlingRightsKeys[castlingRights.getOrdinal()];
+    }
+
+    public static long epFileKey(final Square epSquare) {
+        return epSquare == null ? 0L : epFileKeys[epSquare.file()];
+    }
+
+    /** Like {@link #epFileKey(Square)}, for an en passant index that may be {@link Position#NO_SQUARE}. */
+    public static long epFileKey(final int epIndex) {
+        return epIndex == Position.NO_SQUARE ? 0L : epFileKeys[Square.file(epIndex)];
+    }
+
+    public static long blackToMoveKey() {
+        return blackToMoveKey;
+    }
+
+    /**
+     * Computes a position's key from scratch by walking every square. Positions keep their key up to date as moves are
+     * made, so this is only needed to set up a new position and to check the incremental key in assertions.
+     */
     public static long hash(final Position position) {
         var key = position.getCurrentColor() == Color.BLACK ? blackToMoveKey : 0L;
 
-        for (final var sq : Square.valueList()) {
-            final var piece = position.getPieceAt(sq);
-            if (piece == null) continue;
-            key ^= squarePieceKeys[sq.ordinal()][piece.ordinal()];
+        for (var bb = position.getBB(); bb != 0; bb &= bb - 1) {
+            final var sq = Bitboard.bitScan(bb);
+            key ^= squarePieceKeys[sq][position.getPieceCodeAt(sq)];
         }
 
         key ^= castlingRightsKeys[position.getCastlingRights().getOrdinal()];
-
-        if (position.getEpSquare() != null) {
-            key ^= epFileKeys[position.getEpSquare().file()];
-        }
+        key ^= epFileKey(position.getEpIndex());
 
         return key;
     }
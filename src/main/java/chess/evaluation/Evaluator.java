@@ -14,10 +14,10 @@ public class Evaluator {
     public static int run(final Position position) {
         var material = 0;
         var pieceLoc = 0;
-        for (final var piece : Piece.valueList()) {
-            for (final var sq : Bitboard.iterSquares(position.getBB(piece))) {
+        for (var piece = 0; piece < Piece.count(); piece++) {
+            for (var bb = position.getBB(piece); bb != 0; bb &= bb - 1) {
                 material += Material.getValue(piece);
-                pieceLoc += PieceLocations.getValue(piece, sq);
+                pieceLoc += PieceLocations.getValue(piece, Bitboard.bitScan(bb));
             }
         }
 
@@ -19,4 +19,8 @@ class Material {
     public static int getValue(final Piece piece) {
         return values[piece.ordinal()];
     }
+
+    public static int getValue(final int pieceCode) {
+        return values[pieceCode];
+    }
 }
@@ -66,4 +66,8 @@ class PieceLocations {
     public static int getValue(final Piece piece, final Square square) {
         return values[piece.ordinal()][square.ordinal()];
     }
+
+    public static int getValue(final int pieceCode, final int square) {
+        return values[pieceCode][square];
+    }
 }
@@ -0,0 +1,266 @@
+package chess.move;
+
+import chess.basictypes.FenParser;
+import chess.basictypes.Piece;
+import chess.basictypes.Position;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads EPD lines, or FEN lines with EPD operations after them, into a reusable {@link Position} and
+ * {@link EpdRecord} without allocating. Lines come either from a {@link CharSequence} or one by one from an ASCII
+ * {@link ByteBuffer}, which suits memory-mapped files. The {@code bm}, {@code am}, {@code id}, {@code c0},
+ * {@code hmvc} and {@code fmvn} operations and the {@code D<depth>} perft counts of perft suites are understood, and
+ * any other operation is skipped. Moves may be given in SAN or in coordinate notation.
+ * <p>
+ * A parser keeps scratch state, so each thread needs its own.
+ */
+public class EpdParser {
+    private final boolean validate;
+    private final int[] moves = new int[Movegen.MAX_MOVES];
+    private int movesEnd;
+    private final AsciiLine line = new AsciiLine();
+
+    /** See {@link FenParser#parse(CharSequence, int, Position, boolean)} for what skipping validation saves. */
+    public EpdParser(final boolean validate) {
+        this.validate = validate;
+    }
+
+    public Position parse(final CharSequence epd, final Position position, final EpdRecord record) {
+        record.clear();
+        movesEnd = -1;
+
+        final var length = epd.length();
+        var i = FenParser.parse(epd, 0, position, validate);
+        while (true) {
+            while (i < length && (epd.charAt(i) == ' ' || epd.charAt(i) == ';')) i++;
+            if (i >= length) break;
+
+            final var opcodeStart = i;
+            while (i < length && epd.charAt(i) != ' ' && epd.charAt(i) != ';') i++;
+            final var opcodeEnd = i;
+
+            while (true) {
+                while (i < length && epd.charAt(i) == ' ') i++;
+                if (i >= length) break;
+                if (epd.charAt(i) == ';') {
+                    i++;
+                    break;
+                }
+
+                final int operandStart;
+                final int operandEnd;
+                if (epd.charAt(i) == '"') {
+                    operandStart = ++i;
+                    while (i < length && epd.charAt(i) != '"') i++;
+                    if (i >= length) throw new IllegalArgumentException("EPD error: unterminated string at " + operandStart);
+                    operandEnd = i++;
+                } else {
+                    operandStart = i;
+                    while (i < length && epd.charAt(i) != ' ' && epd.charAt(i) != ';') i++;
+                    operandEnd = i;
+                }
+                readOperand(epd, opcodeStart, opcodeEnd, operandStart, operandEnd, position, record);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Parses the next non-blank line of the buffer, from its position up to a line feed, and advances the buffer past
+     * it. Returns false once the buffer holds no more lines.
+     */
+    public boolean parse(final ByteBuffer buffer, final Position position, final EpdRecord record) {
+        while (buffer.hasRemaining()) {
+            final var start = buffer.position();
+            var end = start;
+            while (end < buffer.limit() && buffer.get(end) != '\n') end++;
+            buffer.position(Math.min(end + 1, buffer.limit()));
+            if (end > start && buffer.get(end - 1) == '\r') end--;
+
+            line.reset(buffer, start, end);
+            if (!line.isBlank()) {
+                parse(line, position, record);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readOperand(
+        final CharSequence epd,
+        final int opcodeStart,
+        final int opcodeEnd,
+        final int start,
+        final int end,
+        final Position position,
+        final EpdRecord record
+    ) {
+        if (is(epd, opcodeStart, opcodeEnd, "bm")) {
+            record.addBestMove(parseMove(epd, start, end, position));
+        } else if (is(epd, opcodeStart, opcodeEnd, "am")) {
+            record.addAvoidMove(parseMove(epd, start, end, position));
+        } else if (is(epd, opcodeStart, opcodeEnd, "id")) {
+            append(record.idBuilder(), epd, start, end);
+        } else if (is(epd, opcodeStart, opcodeEnd, "c0")) {
+            append(record.commentBuilder(), epd, start, end);
+        } else if (is(epd, opcodeStart, opcodeEnd, "hmvc")) {
+            position.setHalfmoveClock(parseInt(epd, start, end));
+        } else if (is(epd, opcodeStart, opcodeEnd, "fmvn")) {
+            position.setFullmoveCounter(Math.max(parseInt(epd, start, end), 1));
+        } else if (opcodeEnd - opcodeStart > 1 && epd.charAt(opcodeStart) == 'D') {
+            record.setPerftCount(parseInt(epd, opcodeStart + 1, opcodeEnd), parseLong(epd, start, end));
+        }
+    }
+
+    /** Finds the legal move written in SAN, such as {@code Nbd7}, {@code exd8=Q+} or {@code O-O}, or as {@code e7e8q}. */
+    private int parseMove(final CharSequence epd, final int start, int end, final Position position) {
+        while (end > start && "+#!?".indexOf(epd.charAt(end - 1)) != -1) end--;
+        if (end - start < 2) throw moveError(epd, start, end);
+        if (movesEnd < 0) movesEnd = Movegen.legal(position, moves, 0);
+
+        final var first = epd.charAt(start);
+        if (first == 'O' || first == '0') {
+            final var queenside = end - start >= 5;
+            for (var i = 0; i < movesEnd; i++) {
+                final var move = moves[i];
+                if (PackedMove.isCastling(move)
+                    && PackedMove.getToIndex(move) < PackedMove.getFromIndex(move) == queenside
+                ) return move;
+            }
+            throw moveError(epd, start, end);
+        }
+
+        Piece.Type promotionType = null;
+        final var last = epd.charAt(end - 1);
+        if (last < '1' || last > '8') {
+            promotionType = typeOf(Character.toUpperCase(last));
+            if (promotionType == null) throw moveError(epd, start, end);
+            end--;
+            if (epd.charAt(end - 1) == '=') end--;
+        }
+
+        final var toFile = epd.charAt(end - 2) - 'a';
+        final var toRank = epd.charAt(end - 1) - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) throw moveError(epd, start, end);
+        final var to = toRank << 3 | toFile;
+
+        final var pieceType = typeOf(first);
+        final var type = pieceType == null ? Piece.Type.PAWN : pieceType;
+        var fromFile = -1;
+        var fromRank = -1;
+        for (var i = pieceType == null ? start : start + 1; i < end - 2; i++) {
+            final var c = epd.charAt(i);
+            if (c >= 'a' && c <= 'h') fromFile = c - 'a';
+            else if (c >= '1' && c <= '8') fromRank = c - '1';
+            else if (c != 'x' && c != '-' && c != ':') throw moveError(epd, start, end);
+        }
+
+        // Coordinate notation names the from square instead of the piece
+        final var checkType = pieceType != null || fromFile == -1 || fromRank == -1;
+        var found = PackedMove.NONE;
+        for (var i = 0; i < movesEnd; i++) {
+            final var move = moves[i];
+            final var from = PackedMove.getFromIndex(move);
+            if (PackedMove.getToIndex(move) != to
+                || PackedMove.getPromotionType(move) != promotionType
+                || checkType && Piece.typeOf(position.getPieceCodeAt(from)) != type
+                || fromFile != -1 && (from & 7) != fromFile
+                || fromRank != -1 && from >>> 3 != fromRank
+            ) continue;
+            if (found != PackedMove.NONE) throw moveError(epd, start, end);
+            found = move;
+        }
+        if (found == PackedMove.NONE) throw moveError(epd, start, end);
+        return found;
+    }
+
+    private static Piece.Type typeOf(final char c) {
+        switch (c) {
+            case 'N':
+                return Piece.Type.KNIGHT;
+            case 'B':
+                return Piece.Type.BISHOP;
+            case 'R':
+                return Piece.Type.ROOK;
+            case 'Q':
+                return Piece.Type.QUEEN;
+            case 'K':
+                return Piece.Type.KING;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean is(final CharSequence epd, final int start, final int end, final String opcode) {
+        if (end - start != opcode.length()) return false;
+        for (var i = 0; i < opcode.length(); i++)
+            if (epd.charAt(start + i) != opcode.charAt(i)) return false;
+        return true;
+    }
+
+    private static void append(final StringBuilder sb, final CharSequence epd, final int start, final int end) {
+        if (sb.length() > 0) sb.append(' ');
+        sb.append(epd, start, end);
+    }
+
+    private static int parseInt(final CharSequence epd, final int start, final int end) {
+        return Math.toIntExact(parseLong(epd, start, end));
+    }
+
+    private static long parseLong(final CharSequence epd, final int start, final int end) {
+        var value = 0L;
+        for (var i = start; i < end; i++) {
+            final var c = epd.charAt(i);
+            if (c < '0' || c > '9') throw new IllegalArgumentException("EPD error at " + i + ": '" + c + "'");
+            value = 10 * value + c - '0';
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException moveError(final CharSequence epd, final int start, final int end) {
+        return new IllegalArgumentException("EPD error: bad move '" + epd.subSequence(start, end) + "'");
+    }
+
+    /** A window onto one line of an ASCII buffer, so that lines can be parsed without decoding them into strings. */
+    private static class AsciiLine implements CharSequence {
+        private ByteBuffer buffer;
+        private int start;
+        private int end;
+
+        void reset(final ByteBuffer buffer, final int start, final int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean isBlank() {
+            for (var i = start; i < end; i++)
+                if (!Character.isWhitespace(buffer.get(i))) return false;
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(final int from, final int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            final var sb = new StringBuilder(length());
+            for (var i = start; i < end; i++)
+                sb.append((char) (buffer.get(i) & 0xff));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package chess.move;
+
+import java.util.Arrays;
+
+/**
+ * The EPD operations {@link EpdParser} understands, for one line at a time, including the {@code D1}, {@code D2}, ...
+ * perft counts of perft suites. A record is meant to be reused: each parse clears it and refills its arrays and
+ * builders in place, so reading a file allocates nothing per line. Moves are packed moves, resolved against the
+ * position on the same line.
+ */
+public class EpdRecord {
+    public static final int MAX_PERFT_DEPTH = 15;
+
+    private static final int MAX_OPERAND_MOVES = 16;
+
+    private final int[] bestMoves = new int[MAX_OPERAND_MOVES];
+    private final int[] avoidMoves = new int[MAX_OPERAND_MOVES];
+    private int bestMoveCount;
+    private int avoidMoveCount;
+    private final StringBuilder id = new StringBuilder();
+    private final StringBuilder comment = new StringBuilder();
+    private final long[] perftCounts = new long[MAX_PERFT_DEPTH + 1];
+    private int maxPerftDepth;
+
+    public EpdRecord() {
+        clear();
+    }
+
+    public void clear() {
+        bestMoveCount = 0;
+        avoidMoveCount = 0;
+        Arrays.fill(perftCounts, -1L);
+        maxPerftDepth = 0;
+        id.setLength(0);
+        comment.setLength(0);
+    }
+
+    /** Returns the number of moves of the {@code bm} operation, 0 if there is none. */
+    public int getBestMoveCount() {
+        return bestMoveCount;
+    }
+
+    public int getBestMove(final int i) {
+        return bestMoves[i];
+    }
+
+    /** Returns the number of moves of the {@code am} operation, 0 if there is none. */
+    public int getAvoidMoveCount() {
+        return avoidMoveCount;
+    }
+
+    public int getAvoidMove(final int i) {
+        return avoidMoves[i];
+    }
+
+    /** Returns the {@code id} operand, empty if there is none. Its contents change with the next parse. */
+    public CharSequence getId() {
+        return id;
+    }
+
+    /** Returns the {@code c0} operand, empty if there is none. Its contents change with the next parse. */
+    public CharSequence getComment() {
+        return comment;
+    }
+
+    /** Returns the deepest depth with a perft count, 0 if there is none. */
+    public int getMaxPerftDepth() {
+        return maxPerftDepth;
+    }
+
+    /** Returns the expected perft count for the given depth, or -1 if the line gives none. */
+    public long getPerftCount(final int depth) {
+        return depth <= maxPerftDepth ? perftCounts[depth] : -1L;
+    }
+
+    void setPerftCount(final int depth, final long nodes) {
+        if (depth < 1 || depth > MAX_PERFT_DEPTH) throw new IllegalArgumentException("EPD error: bad perft depth " + depth);
+        perftCounts[depth] = nodes;
+        maxPerftDepth = Math.max(maxPerftDepth, depth);
+    }
+
+    void addBestMove(final int move) {
+        if (bestMoveCount == bestMoves.length) throw new IllegalArgumentException("EPD error: too many bm moves");
+        bestMoves[bestMoveCount++] = move;
+    }
+
+    void addAvoidMove(final int move) {
+        if (avoidMoveCount == avoidMoves.length) throw new IllegalArgumentException("EPD error: too many am moves");
+        avoidMoves[avoidMoveCount++] = move;
+    }
+
+    StringBuilder idBuilder() {
+        return id;
+    }
+
+    StringBuilder commentBuilder() {
+        return comment;
+    }
+}
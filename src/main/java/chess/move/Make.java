@@ -7,34 +7,35 @@ import java.util.List;
 public class Make {
     private static int common(
         final Position position,
-        final Square from,
-        final Square to,
-        final Piece moved,
-        final Piece captured
+        final int from,
+        final int to,
+        final int moved,
+        final int captured
     ) {
-        final var fromBB = Bitboard.fromSquare(from);
-        final var toBB = Bitboard.fromSquare(to);
-        final var motionBB = fromBB | toBB;
+        final var toBB = 1L << to;
 
-        position.xorBB(moved, motionBB);
-        position.setPieceAt(from, null);
-        position.setPieceAt(to, moved);
+        position.xorBB(moved, 1L << from | toBB);
+        position.setPieceCodeAt(from, Position.EMPTY);
+        position.setPieceCodeAt(to, moved);
+        position.xorKey(Zobrist.pieceKey(moved, from) ^ Zobrist.pieceKey(moved, to));
 
-        if (captured == null)
-            return moved.type() == Piece.Type.PAWN ? 0 : position.getHalfmoveClock() + 1;
+        if (captured == Position.EMPTY)
+            return Piece.typeOf(moved) == Piece.Type.PAWN ? 0 : position.getHalfmoveClock() + 1;
 
-        final var otherColor = position.getCurrentColor().invert();
         position.xorBB(captured, toBB);
-        if (captured.type() == Piece.Type.ROOK)
+        position.xorKey(Zobrist.pieceKey(captured, to));
+        if (Piece.typeOf(captured) == Piece.Type.ROOK) {
+            final var otherColor = Piece.colorOf(captured);
             for (final var dir : CastlingDirection.valueList())
-                if (to == CastlingDefinition.of(otherColor, dir).getRookFrom())
+                if (to == CastlingDefinition.of(otherColor, dir).getRookFrom().ordinal())
                     position.setCastlingRights(
                         position.getCastlingRights().disallow(otherColor, dir)
                     );
+        }
         return 0;
     }
 
-    public static Position.Snapshot run(final Position position, final String move, final List<Move> moveList) {
+    public static void run(final Position position, final String move, final List<Move> moveList) {
         final Square from = Square.valueOf(move.substring(0, 2).toUpperCase());
         final Square to = Square.valueOf(move.substring(2, 4).toUpperCase());
         final Piece.Type promotion;
@@ -64,10 +65,10 @@ public class Make {
                 && to == m.getTo()
                 && promotion == m.getPromotionType()
             ) {
-                final var snapshot = Make.run(position, m);
+                Make.run(position, PackedMove.of(m));
                 if (!Movegen.opponentKingIsAttacked(position))
-                    return snapshot;
-                Unmake.run(position, snapshot);
+                    return;
+                Unmake.run(position);
                 throw new IllegalArgumentException("Illegal move");
 
             }
@@ -76,28 +77,25 @@ public class Make {
         throw new IllegalArgumentException("Unavailable move");
     }
 
-    public static Position.Snapshot run(final Position position, final Move move) {
+    public static void run(final Position position, final int move) {
         final var currentColor = position.getCurrentColor();
-        final var from = move.getFrom();
-        final var to = move.getTo();
-        final var moved = position.getPieceAt(from);
-        final var captured = position.getPieceAt(to);
-
-        final var snapshot = new Position.Snapshot(
-            move,
-            captured,
-            Zobrist.hash(position),
-            position.getCastlingRights(),
-            position.getEpSquare(),
-            position.getHalfmoveClock()
-        );
+        final var from = PackedMove.getFromIndex(move);
+        final var to = PackedMove.getToIndex(move);
+        final var moved = position.getPieceCodeAt(from);
+        final var captured = position.getPieceCodeAt(to);
+
+        position.pushUndo(move, captured);
 
-        position.setEpSquare(null);
+        // The old castling rights and en passant file leave the key here and the new ones join it at the end
+        position.xorKey(
+            Zobrist.castlingRightsKey(position.getCastlingRights()) ^ Zobrist.epFileKey(position.getEpIndex())
+        );
+        position.setEpIndex(Position.NO_SQUARE);
         position.setHalfmoveClock(common(position, from, to, moved, captured));
-        switch (moved.type()) {
+        switch (Piece.typeOf(moved)) {
             case ROOK:
                 for (final var dir : CastlingDirection.valueList()) {
-                    if (from == CastlingDefinition.of(currentColor, dir).getRookFrom()) {
+                    if (from == CastlingDefinition.of(currentColor, dir).getRookFrom().ordinal()) {
                         position.setCastlingRights(
                             position.getCastlingRights().disallow(currentColor, dir)
                         );
@@ -109,39 +107,33 @@ public class Make {
                 position.setCastlingRights(
                     position.getCastlingRights().disallow(currentColor)
                 );
-                if (move.isCastling()) {
-                    final var castlingDef = CastlingDefinition.of(currentColor, move.getCastlingDirection());
-                    final var rookFrom = castlingDef.getRookFrom();
-                    final var rookTo = castlingDef.getRookTo();
-                    final var rookMotionBB
-                        = Bitboard.fromSquare(rookFrom)
-                        | Bitboard.fromSquare(rookTo);
-                    final var rook = Piece.of(currentColor, Piece.Type.ROOK);
-                    position.xorBB(rook, rookMotionBB);
-                    position.setPieceAt(rookFrom, null);
-                    position.setPieceAt(rookTo, rook);
+                if (PackedMove.isCastling(move)) {
+                    final var castlingDef = CastlingDefinition.of(currentColor, PackedMove.getCastlingDirection(move));
+                    final var rookFrom = castlingDef.getRookFrom().ordinal();
+                    final var rookTo = castlingDef.getRookTo().ordinal();
+                    final var rook = Piece.code(currentColor, Piece.Type.ROOK);
+                    position.xorBB(rook, 1L << rookFrom | 1L << rookTo);
+                    position.setPieceCodeAt(rookFrom, Position.EMPTY);
+                    position.setPieceCodeAt(rookTo, rook);
+                    position.xorKey(Zobrist.pieceKey(rook, rookFrom) ^ Zobrist.pieceKey(rook, rookTo));
                 }
                 break;
             case PAWN:
-                if (move.isEnpassantCapture()) {
-                    final var actualCaptured = Piece.of(currentColor.invert(), Piece.Type.PAWN);
-                    final var capturedSq = Square.at(to.file(), from.rank());
-                    final var capturedBB = Bitboard.fromSquare(capturedSq);
-                    position.xorBB(actualCaptured, capturedBB);
-                    position.setPieceAt(capturedSq, null);
-                } else if (move.getPromotionType() != null) {
-                    final var promotionPiece = Piece.of(currentColor, move.getPromotionType());
-                    final var toBB = Bitboard.fromSquare(to);
+                if (PackedMove.isEnpassantCapture(move)) {
+                    final var actualCaptured = Piece.code(currentColor.invert(), Piece.Type.PAWN);
+                    final var capturedSq = (from & ~0b111) | (to & 0b111);
+                    position.xorBB(actualCaptured, 1L << capturedSq);
+                    position.setPieceCodeAt(capturedSq, Position.EMPTY);
+                    position.xorKey(Zobrist.pieceKey(actualCaptured, capturedSq));
+                } else if (PackedMove.isPromotion(move)) {
+                    final var promotionPiece = Piece.code(currentColor, PackedMove.getPromotionType(move));
+                    final var toBB = 1L << to;
                     position.xorBB(moved, toBB);
                     position.xorBB(promotionPiece, toBB);
-                    position.setPieceAt(to, promotionPiece);
-                } else if (Math.abs(from.rank() - to.rank()) == 2) {
-                    position.setEpSquare(
-                        Square.at(
-                            from.file(),
-                            (from.rank() + to.rank()) / 2
-                        )
-                    );
+                    position.setPieceCodeAt(to, promotionPiece);
+                    position.xorKey(Zobrist.pieceKey(moved, to) ^ Zobrist.pieceKey(promotionPiece, to));
+                } else if (Math.abs(to - from) == 16) {
+                    position.setEpIndex((from + to) >>> 1);
                 }
                 break;
         }
@@ -149,9 +141,30 @@ public class Make {
         position.setCurrentColor(currentColor.invert());
         if (currentColor == Color.BLACK)
             position.setFullmoveCounter(position.getFullmoveCounter() + 1);
+        position.xorKey(
+            Zobrist.castlingRightsKey(position.getCastlingRights())
+                ^ Zobrist.epFileKey(position.getEpIndex())
+                ^ Zobrist.blackToMoveKey()
+        );
 
         assert position.validate() == null : position.validate();
+        assert position.getKey() == Zobrist.hash(position) : "Incremental key does not match the position";
+    }
+
+    /**
+     * Passes the turn without moving a piece. The en passant square lapses and the halfmove clock advances as for any
+     * other reversible move. Take it back with {@link Unmake#runNull(Position)}.
+     */
+    public static void runNull(final Position position) {
+        final var currentColor = position.getCurrentColor();
+        position.pushUndo(PackedMove.NONE, Position.EMPTY);
+        position.xorKey(Zobrist.epFileKey(position.getEpIndex()) ^ Zobrist.blackToMoveKey());
+        position.setEpIndex(Position.NO_SQUARE);
+        position.setHalfmoveClock(position.getHalfmoveClock() + 1);
+        position.setCurrentColor(currentColor.invert());
+        if (currentColor == Color.BLACK)
+            position.setFullmoveCounter(position.getFullmoveCounter() + 1);
 
-        return snapshot;
+        assert position.getKey() == Zobrist.hash(position) : "Incremental key does not match the position";
     }
 }
@@ -2,27 +2,49 @@ package chess.move;
 
 import chess.basictypes.*;
 
+import java.util.Random;
+
 class Motions {
     //region Non-Ray
 
     static long kingAttacks(final Square square) {
-        return kingAttacksBySquare[square.ordinal()];
+        return kingAttacks(square.ordinal());
+    }
+
+    static long kingAttacks(final int square) {
+        return kingAttacksBySquare[square];
     }
 
     static long knightAttacks(final Square square) {
-        return knightAttacksBySquare[square.ordinal()];
+        return knightAttacks(square.ordinal());
+    }
+
+    static long knightAttacks(final int square) {
+        return knightAttacksBySquare[square];
     }
 
     static long pawnAttacks(final Color color, final Square square) {
-        return pawnAttacksByColorAndSquare[color.ordinal()][square.ordinal()];
+        return pawnAttacks(color, square.ordinal());
+    }
+
+    static long pawnAttacks(final Color color, final int square) {
+        return pawnAttacksByColorAndSquare[color.ordinal()][square];
     }
 
     static long pawnSinglePush(final Color color, final Square square) {
-        return pawnSinglePushesByColorAndSquare[color.ordinal()][square.ordinal()];
+        return pawnSinglePush(color, square.ordinal());
+    }
+
+    static long pawnSinglePush(final Color color, final int square) {
+        return pawnSinglePushesByColorAndSquare[color.ordinal()][square];
     }
 
     static long pawnDoublePush(final Color color, final Square square) {
-        return pawnDoublePushesByColorAndSquare[color.ordinal()][square.ordinal()];
+        return pawnDoublePush(color, square.ordinal());
+    }
+
+    static long pawnDoublePush(final Color color, final int square) {
+        return pawnDoublePushesByColorAndSquare[color.ordinal()][square];
     }
 
     private static final long[] kingAttacksBySquare = new long[Square.count()];
@@ -70,7 +92,7 @@ class Motions {
             case "s":
                 return from >>> 8;
             case "w":
-                return (from & excludeA) >> 1;
+                return (from & excludeA) >>> 1;
 
             case "ne":
                 return (from & excludeH) << 9;
@@ -108,98 +130,309 @@ class Motions {
     //region Ray Moves
 
     static long queenAttacks(final Square square, final long occupied) {
+        return queenAttacks(square.ordinal(), occupied);
+    }
+
+    static long queenAttacks(final int square, final long occupied) {
         return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
     }
 
     static long rookAttacks(final Square square, final long occupied) {
-        return rankAttacks(square, occupied) | fileAttacks(square, occupied);
+        return rookAttacks(square.ordinal(), occupied);
     }
 
-    static long bishopAttacks(final Square square, final long occupied) {
-        return diagAttacks(square, occupied) | adiagAttacks(square, occupied);
+    static long rookAttacks(final int square, final long occupied) {
+        final var index = (int) ((occupied & rookMasks[square]) * rookMagics[square] >>> rookShifts[square]);
+        return rookTable[rookOffsets[square] + index];
     }
 
-    private static long rankAttacks(final Square square, final long occupied) {
-        final var rayMask = Bitboard.rank(square.rank());
-        final var occupied6Bits
-                = (occupied & rayMask & ~Bitboard.file(7))
-                >>> (1 + Long.numberOfTrailingZeros(rayMask));
-        return rankAttacksBySquareAndOccupation[square.ordinal()][(int) occupied6Bits];
+    static long bishopAttacks(final Square square, final long occupied) {
+        return bishopAttacks(square.ordinal(), occupied);
     }
 
-    private static long fileAttacks(final Square square, final long occupied) {
-        var occupied6Bits = occupied & Bitboard.file(square.file());
-        occupied6Bits >>>= square.file();
-        occupied6Bits *= Bitboard.antidiagonal(7); // mirror along diag
-        occupied6Bits &= ~Bitboard.file(7);
-        occupied6Bits >>>= 57;
-        return fileAttacksBySquareAndOccupation[square.ordinal()][(int) occupied6Bits];
+    static long bishopAttacks(final int square, final long occupied) {
+        final var index = (int) ((occupied & bishopMasks[square]) * bishopMagics[square] >>> bishopShifts[square]);
+        return bishopTable[bishopOffsets[square] + index];
     }
 
-    private static long diagAttacks(final Square square, final long occupied) {
-        var occupied6Bits = occupied & Bitboard.diagonal(square.diagonal());
-        occupied6Bits *= Bitboard.file(0); // project onto horizontal
-        occupied6Bits &= ~Bitboard.file(7);
-        occupied6Bits >>>= 57;
-        return diagonalAttacksBySquareAndOccupation[square.ordinal()][(int) occupied6Bits];
-    }
+    // Fancy magic bitboards: the relevant occupancy of a slider's rays (its mask) is multiplied by a per-square magic
+    // number whose top bits then index a table of attack sets. Each square owns a slice of one shared table per slider.
+    private static final int[][] rookDirections = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+    private static final int[][] bishopDirections = {{1, 1}, {1, -1}, {-1, -1}, {-1, 1}};
+
+    // Found with initMagics' search (java.util.Random seeded with 1); they are re-verified when the tables are filled.
+    private static final long[] rookMagics = {
+        0x0480053081214000L, 0x0040100040002001L, 0x6080200080100008L, 0x0200082004411200L,
+        0x0200102008040200L, 0x1100240028210012L, 0x1080008001000200L, 0x0100020028488100L,
+        0x0001800220400086L, 0x2488804000802004L, 0x0c00801000200081L, 0x201c801000080080L,
+        0x0441000800100500L, 0x00a0808002000400L, 0x0125000402000100L, 0x0001002200409100L,
+        0x0280004020004000L, 0x5110084020004000L, 0x0001050020024011L, 0x0002020020081040L,
+        0x0800050008010010L, 0x81c0808002000400L, 0x8010808001000200L, 0x000006000100408cL,
+        0x0280400080008020L, 0x3000500040002000L, 0x8400200080801000L, 0x80a01001000d0020L,
+        0x900c001101000800L, 0x0110040080800200L, 0x1001000100040200L, 0x0060040200008041L,
+        0x4480804000800038L, 0x0040002001804080L, 0x2010882000801000L, 0x0000080282801000L,
+        0x0200080080800400L, 0x0206000400808002L, 0x2000020001010004L, 0x1014042042000091L,
+        0x0200208040008000L, 0x0040201000404002L, 0x0244200100110041L, 0x0041019000090020L,
+        0x0a28001100850008L, 0x0020020004008080L, 0x1001220108140010L, 0x8a0400408106000cL,
+        0x0000220100508200L, 0x6040048049003100L, 0x0000200011024300L, 0x0000900100082500L,
+        0x0870040008008080L, 0x0850800600040180L, 0x0006008104480200L, 0x1800040108b04200L,
+        0xd12c201080010341L, 0x0101042040008013L, 0x2801004008200273L, 0x001900614c500009L,
+        0x0202004461500802L, 0x0002001008040102L, 0x10001028b1080604L, 0x000d000040803201L
+    };
+    private static final long[] bishopMagics = {
+        0x6460220208002480L, 0x8308c80104002010L, 0xb408121042008000L, 0x0c48205040021000L,
+        0x1002021000020000L, 0x0840882440802010L, 0x0080809008204040L, 0x00001402011028a0L,
+        0x088ec002040400b0L, 0x0005500608087180L, 0x0000a20089020010L, 0x000010908602c060L,
+        0x2810420210014000L, 0x0040024802400080L, 0x0408484230100840L, 0x00020a08a4011800L,
+        0x0020003062062848L, 0x0002504510440102L, 0xa23005310c008810L, 0x0048000104110044L,
+        0x010a000422010008L, 0x2021000200a0a400L, 0x0004400208124801L, 0x8000280480841000L,
+        0x8110100206600229L, 0x0814204102080909L, 0x00a0300002040840L, 0x8808080000202020L,
+        0x04040400c0410040L, 0x108404200c101400L, 0x01c1012000480802L, 0xa020520040420200L,
+        0x2404100800062001L, 0x0002014400208804L, 0x0100805000410402L, 0x0241420080080080L,
+        0x8040040444030100L, 0x0f50064242020110L, 0x0001020200888818L, 0x0801021200018069L,
+        0x2803086094a01040L, 0x2440482804444800L, 0x0002002024200804L, 0x880101420800c084L,
+        0x40a4182008200900L, 0x8420008102041040L, 0x00901001304a0508L, 0x0450021448519100L,
+        0x0402021002080a10L, 0x000d01009084020cL, 0x20800a0046480040L, 0x0000083020880220L,
+        0x0001010803040142L, 0x0000081001520000L, 0x0040100420809000L, 0x0022900428808202L,
+        0x0000404044202010L, 0x1008004044108804L, 0x1008305509415000L, 0x1000840400208840L,
+        0x0810260a12020201L, 0x3000a04410020210L, 0x0903102082008204L, 0x490808088808c308L
+    };
+
+    private static final long[] rookMasks = new long[Square.count()];
+    private static final int[] rookShifts = new int[Square.count()];
+    private static final int[] rookOffsets = new int[Square.count()];
+    private static final long[] rookTable;
+
+    private static final long[] bishopMasks = new long[Square.count()];
+    private static final int[] bishopShifts = new int[Square.count()];
+    private static final int[] bishopOffsets = new int[Square.count()];
+    private static final long[] bishopTable;
 
-    private static long adiagAttacks(final Square square, final long occupied) {
-        var occupied6Bits = occupied & Bitboard.antidiagonal(square.antidiagonal());
-        occupied6Bits *= Bitboard.file(0); // project onto horizontal
-        occupied6Bits &= ~Bitboard.file(7);
-        occupied6Bits >>>= 57;
-        return antidiagonalAttacksBySquareAndOccupation[square.ordinal()][(int) occupied6Bits];
+    static {
+        final var rng = new Random(1);
+        rookTable = initMagics(rookDirections, rookMasks, rookMagics, rookShifts, rookOffsets, rng);
+        bishopTable = initMagics(bishopDirections, bishopMasks, bishopMagics, bishopShifts, bishopOffsets, rng);
     }
 
-    private static final long[][] rankAttacksBySquareAndOccupation = new long[Square.count()][64];
-    private static final long[][] fileAttacksBySquareAndOccupation = new long[Square.count()][64];
-    private static final long[][] diagonalAttacksBySquareAndOccupation = new long[Square.count()][64];
-    private static final long[][] antidiagonalAttacksBySquareAndOccupation = new long[Square.count()][64];
-    static {
-        // byteAttacks contains 1D attack rays of files/ranks/diagonals when flattened to the bottom rank.
-        // The first index is the attacker's position. The second index is the occupancy of the middle 6 positions.
-        final long[][] byteAttacks = new long[8][64];
-        for (var attacker = 0; attacker < 8; attacker++) {
-            for (var occupied6Bits = 0; occupied6Bits < 64; occupied6Bits++) {
-                final var occupied8Bits = occupied6Bits << 1;
-                var ray = 0L;
-
-                // slide right
-                for (var cursor = attacker + 1; cursor < 8; cursor++) {
-                    final var cursorMask = 1L << cursor;
-                    ray |= cursorMask;
-                    if ((cursorMask & occupied8Bits) != 0) break;
-                }
+    /**
+     * Fills and returns the attack table for one slider. A square's magic is only accepted once every occupancy subset
+     * of its mask has been mapped to an index holding the correct attack set. If the stored magic fails that check, a
+     * new one is searched for with random sparse candidates.
+     */
+    private static long[] initMagics(
+        final int[][] directions,
+        final long[] masks,
+        final long[] magics,
+        final int[] shifts,
+        final int[] offsets,
+        final Random rng
+    ) {
+        var size = 0;
+        for (var sq = 0; sq < Square.count(); sq++) {
+            masks[sq] = slidingAttacks(directions, sq, 0L, true);
+            shifts[sq] = 64 - Bitboard.bitCount(masks[sq]);
+            offsets[sq] = size;
+            size += 1 << Bitboard.bitCount(masks[sq]);
+        }
 
-                // slide left
-                for (var cursor = attacker - 1; cursor >= 0; cursor--) {
-                    final var cursorMask = 1L << cursor;
-                    ray |= cursorMask;
-                    if ((cursorMask & occupied8Bits) != 0) break;
+        final var table = new long[size];
+        final var occupancies = new long[1 << 12];
+        final var references = new long[1 << 12];
+        final var epochs = new int[1 << 12];
+        var epoch = 0;
+
+        for (var sq = 0; sq < Square.count(); sq++) {
+            final var mask = masks[sq];
+            final var shift = shifts[sq];
+            final var offset = offsets[sq];
+
+            // Enumerate all subsets of the mask (carry-rippler)
+            var count = 0;
+            var subset = 0L;
+            do {
+                occupancies[count] = subset;
+                references[count] = slidingAttacks(directions, sq, subset, false);
+                count++;
+                subset = (subset - mask) & mask;
+            } while (subset != 0);
+
+            var magic = magics[sq];
+            search:
+            while (true) {
+                epoch++;
+                for (var i = 0; i < count; i++) {
+                    final var index = (int) (occupancies[i] * magic >>> shift);
+                    if (epochs[index] < epoch) {
+                        epochs[index] = epoch;
+                        table[offset + index] = references[i];
+                    } else if (table[offset + index] != references[i]) {
+                        do {
+                            magic = rng.nextLong() & rng.nextLong() & rng.nextLong();
+                        } while (Bitboard.bitCount((mask * magic) & 0xff00000000000000L) < 6);
+                        continue search;
+                    }
                 }
+                magics[sq] = magic;
+                break;
+            }
+        }
+
+        return table;
+    }
 
-                byteAttacks[attacker][occupied6Bits] = ray;
+    /**
+     * Walks each direction from the square until the edge of the board or an occupied square. If {@code maskOnly} is
+     * set, the result is the relevant occupancy mask instead: the rays without their final square.
+     */
+    private static long slidingAttacks(
+        final int[][] directions,
+        final int square,
+        final long occupied,
+        final boolean maskOnly
+    ) {
+        var attacks = 0L;
+        for (final var dir : directions) {
+            var file = (square & 0b111) + dir[0];
+            var rank = (square >>> 3) + dir[1];
+            while (file >= 0 && file <= 7 && rank >= 0 && rank <= 7) {
+                final var nextFile = file + dir[0];
+                final var nextRank = rank + dir[1];
+                if (maskOnly && (nextFile < 0 || nextFile > 7 || nextRank < 0 || nextRank > 7)) break;
+                final var sqbb = 1L << (file | rank << 3);
+                attacks |= sqbb;
+                if (0 != (occupied & sqbb)) break;
+                file = nextFile;
+                rank = nextRank;
             }
         }
+        return attacks;
+    }
 
-        for (final var sq : Square.valueList()) {
-            for (var occupied6Bits = 0; occupied6Bits < 64; occupied6Bits++) {
-                rankAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
-                        = byteAttacks[sq.file()][occupied6Bits] << 8 * sq.rank();
+    //endregion
 
-                fileAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
-                        = (byteAttacks[7 - sq.rank()][occupied6Bits] * Bitboard.antidiagonal(7) & Bitboard.file(7))
-                        >>> (7 - sq.file());
+    //region Lines
 
-                diagonalAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
-                        = byteAttacks[sq.file()][occupied6Bits] * Bitboard.file(0) & Bitboard.diagonal(sq.diagonal());
+    /** Returns the squares strictly between two squares that share a rank, file or diagonal, or 0 otherwise. */
+    static long between(final int from, final int to) {
+        return betweenBySquares[from][to];
+    }
 
-                antidiagonalAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
-                        = byteAttacks[sq.file()][occupied6Bits] * Bitboard.file(0) & Bitboard.antidiagonal(sq.antidiagonal());
+    /** Returns the full rank, file or diagonal through two distinct squares, or 0 if they are not aligned. */
+    static long line(final int from, final int to) {
+        return lineBySquares[from][to];
+    }
+
+    private static final long[][] betweenBySquares = new long[Square.count()][Square.count()];
+    private static final long[][] lineBySquares = new long[Square.count()][Square.count()];
+    static {
+        for (var from = 0; from < Square.count(); from++) {
+            for (var to = 0; to < Square.count(); to++) {
+                if (from == to) continue;
+                final var fromBB = 1L << from;
+                final var toBB = 1L << to;
+                if (0 != (rookAttacks(from, 0L) & toBB)) {
+                    betweenBySquares[from][to] = rookAttacks(from, toBB) & rookAttacks(to, fromBB);
+                    lineBySquares[from][to] = rookAttacks(from, 0L) & rookAttacks(to, 0L) | fromBB | toBB;
+                } else if (0 != (bishopAttacks(from, 0L) & toBB)) {
+                    betweenBySquares[from][to] = bishopAttacks(from, toBB) & bishopAttacks(to, fromBB);
+                    lineBySquares[from][to] = bishopAttacks(from, 0L) & bishopAttacks(to, 0L) | fromBB | toBB;
+                }
             }
         }
     }
 
     //endregion
+
+    //region Set-wise Attacks
+
+    // These work on whole sets of pieces at once by shifting bitboards, so callers need no per-square loop
+
+    /** Returns the squares one step forward of the given pawns, whether or not they are empty. */
+    static long pawnPushes(final Color color, final long pawnsBB) {
+        return color == Color.WHITE ? pawnsBB << 8 : pawnsBB >>> 8;
+    }
+
+    /** Returns the squares the given pawns attack towards the a-file. */
+    static long pawnWestAttacks(final Color color, final long pawnsBB) {
+        return color == Color.WHITE ? (pawnsBB & notFileA) << 7 : (pawnsBB & notFileA) >>> 9;
+    }
+
+    /** Returns the squares the given pawns attack towards the h-file. */
+    static long pawnEastAttacks(final Color color, final long pawnsBB) {
+        return color == Color.WHITE ? (pawnsBB & notFileH) << 9 : (pawnsBB & notFileH) >>> 7;
+    }
+
+    static long allPawnAttacks(final Color color, final long pawnsBB) {
+        return pawnWestAttacks(color, pawnsBB) | pawnEastAttacks(color, pawnsBB);
+    }
+
+    static long allKnightAttacks(final long knightsBB) {
+        final var oneFileBB = (knightsBB & notFileA) >>> 1 | (knightsBB & notFileH) << 1;
+        final var twoFilesBB = (knightsBB & notFilesAB) >>> 2 | (knightsBB & notFilesGH) << 2;
+        return oneFileBB << 16 | oneFileBB >>> 16 | twoFilesBB << 8 | twoFilesBB >>> 8;
+    }
+
+    static long allKingAttacks(final long kingsBB) {
+        final var sidewaysBB = (kingsBB & notFileA) >>> 1 | (kingsBB & notFileH) << 1;
+        final var rowBB = kingsBB | sidewaysBB;
+        return sidewaysBB | rowBB << 8 | rowBB >>> 8;
+    }
+
+    static long allBishopAttacks(final long bishopsBB, final long occupiedBB) {
+        return occludedFills(bishopsBB, ~occupiedBB, bishopShiftDirections, bishopDirectionMasks);
+    }
+
+    static long allRookAttacks(final long rooksBB, final long occupiedBB) {
+        return occludedFills(rooksBB, ~occupiedBB, rookShiftDirections, rookDirectionMasks);
+    }
+
+    private static final long notFileA = ~Bitboard.file(0);
+    private static final long notFileH = ~Bitboard.file(7);
+    private static final long notFilesAB = notFileA & ~Bitboard.file(1);
+    private static final long notFilesGH = notFileH & ~Bitboard.file(6);
+
+    // Shift amounts for rotating a bitboard one step in each direction
+    private static final int[] rookShiftDirections = { 8, 1, -8, -1 };
+    private static final int[] bishopShiftDirections = { 9, -7, -9, 7 };
+    private static final String[] rookDirectionNames = { "n", "e", "s", "w" };
+    private static final String[] bishopDirectionNames = { "ne", "se", "sw", "nw" };
+
+    // The squares a single step in each direction can land on, which masks out the bits that rotating wraps around
+    private static final long[] rookDirectionMasks = new long[rookShiftDirections.length];
+    private static final long[] bishopDirectionMasks = new long[bishopShiftDirections.length];
+    static {
+        for (var i = 0; i < rookShiftDirections.length; i++) {
+            rookDirectionMasks[i] = step(rookDirectionNames[i], ~0L);
+            bishopDirectionMasks[i] = step(bishopDirectionNames[i], ~0L);
+        }
+    }
+
+    private static long occludedFills(
+        final long slidersBB,
+        final long emptyBB,
+        final int[] directions,
+        final long[] masks
+    ) {
+        var attacksBB = 0L;
+        for (var i = 0; i < directions.length; i++)
+            attacksBB |= occludedFill(slidersBB, emptyBB, directions[i], masks[i]);
+        return attacksBB;
+    }
+
+    /**
+     * Kogge-Stone fill: floods the sliders through empty squares in one direction in three doubling steps, then takes
+     * one more step so the fill includes the first blocker on each ray.
+     */
+    private static long occludedFill(final long slidersBB, final long emptyBB, final int shift, final long maskBB) {
+        var generatorBB = slidersBB;
+        var propagatorBB = emptyBB & maskBB;
+        generatorBB |= propagatorBB & Long.rotateLeft(generatorBB, shift);
+        propagatorBB &= Long.rotateLeft(propagatorBB, shift);
+        generatorBB |= propagatorBB & Long.rotateLeft(generatorBB, 2 * shift);
+        propagatorBB &= Long.rotateLeft(propagatorBB, 2 * shift);
+        generatorBB |= propagatorBB & Long.rotateLeft(generatorBB, 4 * shift);
+        return Long.rotateLeft(generatorBB, shift) & maskBB;
+    }
+
+    //endregion
 }
@@ -1,183 +1,568 @@
 package chess.move;
 
 import chess.basictypes.*;
-import chess.search.OrderedMoveList;
 
 import java.util.*;
-import java.util.stream.StreamSupport;
 
 public class Movegen {
+    public static final int MAX_MOVES = 256;
+
+    /** Selects which legal moves a generator call emits. CAPTURES and QUIETS partition ALL. */
+    public enum Filter {
+        /** Every legal move. */
+        ALL,
+        /** Captures, en passant captures and promotions to a queen. */
+        CAPTURES,
+        /** Every other move, including castling and underpromotions. */
+        QUIETS
+    }
+
     public static boolean isAttacked(final Position position, final Square square, final Color attacker) {
-        final var victim = attacker.invert();
-        final var occupiedBB = position.getBB();
-        return 0 != (Motions.pawnAttacks(victim, square) & position.getBB(attacker, Piece.Type.PAWN))
-            || 0 != (Motions.knightAttacks(square) & position.getBB(attacker, Piece.Type.KNIGHT))
-            || 0 != (Motions.bishopAttacks(square, occupiedBB) & position.getBB(attacker, Piece.Type.BISHOP))
-            || 0 != (Motions.rookAttacks(square, occupiedBB) & position.getBB(attacker, Piece.Type.ROOK))
-            || 0 != (Motions.queenAttacks(square, occupiedBB) & position.getBB(attacker, Piece.Type.QUEEN))
-            || 0 != (Motions.kingAttacks(square) & position.getBB(attacker, Piece.Type.KING));
+        return 0 != attackersTo(position, square.ordinal(), attacker, position.getBB());
+    }
+
+    /**
+     * Returns the pieces of either color that attack the square when the board's occupancy is {@code occupiedBB}.
+     * Sliders are blocked by {@code occupiedBB} only, so pieces missing from it can be taken off the board and pieces
+     * added to it can block, without changing the position. The result may include pieces outside
+     * {@code occupiedBB}, which callers that have removed pieces must mask out.
+     */
+    public static long attackersTo(final Position position, final int square, final long occupiedBB) {
+        return attackersTo(position, square, Color.WHITE, occupiedBB)
+            | attackersTo(position, square, Color.BLACK, occupiedBB);
+    }
+
+    /** Like {@link #attackersTo(Position, int, long)}, but only returns the pieces of {@code attacker}. */
+    public static long attackersTo(
+        final Position position,
+        final int square,
+        final Color attacker,
+        final long occupiedBB
+    ) {
+        final var queenBB = position.getBB(attacker, Piece.Type.QUEEN);
+        return Motions.pawnAttacks(attacker.invert(), square) & position.getBB(attacker, Piece.Type.PAWN)
+            | Motions.knightAttacks(square) & position.getBB(attacker, Piece.Type.KNIGHT)
+            | Motions.bishopAttacks(square, occupiedBB) & (position.getBB(attacker, Piece.Type.BISHOP) | queenBB)
+            | Motions.rookAttacks(square, occupiedBB) & (position.getBB(attacker, Piece.Type.ROOK) | queenBB)
+            | Motions.kingAttacks(square) & position.getBB(attacker, Piece.Type.KING);
+    }
+
+    /** Returns every square that a piece of {@code attacker} attacks. */
+    public static long attackedSquares(final Position position, final Color attacker) {
+        return attackedSquares(position, attacker, position.getBB());
+    }
+
+    /** Like {@link #attackedSquares(Position, Color)}, but with sliders blocked by {@code occupiedBB}. */
+    private static long attackedSquares(final Position position, final Color attacker, final long occupiedBB) {
+        final var queenBB = position.getBB(attacker, Piece.Type.QUEEN);
+        return Motions.allPawnAttacks(attacker, position.getBB(attacker, Piece.Type.PAWN))
+            | Motions.allKnightAttacks(position.getBB(attacker, Piece.Type.KNIGHT))
+            | Motions.allBishopAttacks(position.getBB(attacker, Piece.Type.BISHOP) | queenBB, occupiedBB)
+            | Motions.allRookAttacks(position.getBB(attacker, Piece.Type.ROOK) | queenBB, occupiedBB)
+            | Motions.allKingAttacks(position.getBB(attacker, Piece.Type.KING));
     }
 
     public static boolean currentKingIsAttacked(final Position position) {
         final var currentColor = position.getCurrentColor();
-        final var kingSq = position.getKingSquare(currentColor);
-        return isAttacked(position, kingSq, currentColor.invert());
+        final var kingSq = position.getKingIndex(currentColor);
+        return 0 != attackersTo(position, kingSq, currentColor.invert(), position.getBB());
     }
 
     public static boolean opponentKingIsAttacked(final Position position) {
         final var currentColor = position.getCurrentColor();
-        final var kingSq = position.getKingSquare(currentColor.invert());
-        return isAttacked(position, kingSq, currentColor);
+        final var kingSq = position.getKingIndex(currentColor.invert());
+        return 0 != attackersTo(position, kingSq, currentColor, position.getBB());
     }
 
     public static List<Move> legal(final Position position) {
-        final var moveList = pseudoLegal(position);
-        for (var i = moveList.size() - 1; i >= 0; i--) {
-            final var snapshot = Make.run(position, moveList.get(i));
-            if (opponentKingIsAttacked(position))
-                moveList.remove(i);
-            Unmake.run(position, snapshot);
-        }
+        final var moves = new int[MAX_MOVES];
+        final var end = legal(position, moves, 0);
+        final var moveList = new ArrayList<Move>(end);
+        for (var i = 0; i < end; i++)
+            moveList.add(PackedMove.toMove(moves[i]));
         return moveList;
     }
 
-    public static List<Move> pseudoLegal(final Position position) {
-        final var moveList = new ArrayList<Move>();
-        generatePawnMoves(position, moveList);
-        generateKnightMoves(position, moveList);
-        generateBishopMoves(position, moveList);
-        generateRookMoves(position, moveList);
-        generateQueenMoves(position, moveList);
-        generateKingMoves(position, moveList);
-        return moveList;
+    /**
+     * Writes the legal moves of the current position into {@code moves} as packed moves, starting at index
+     * {@code start}, and returns the index one past the last move written. At most {@link #MAX_MOVES} moves are
+     * written, so a search can hand each ply the region that follows its parent's moves in one shared array.
+     * <p>
+     * Legality is decided up front instead of by making each move: the pieces giving check and the pieces pinned to
+     * the king are found once, positions in check get a dedicated evasion generator, pinned pieces are restricted to
+     * the line through their pinner, and king moves are tested against the board with the king lifted off it.
+     */
+    public static int legal(final Position position, final int[] moves, final int start) {
+        return legal(position, Filter.ALL, moves, start);
     }
 
-    private static void generatePawnMoves(final Position position, final List<Move> moveList) {
-        final var moveBuilder = new Move.Builder();
+    /** Like {@link #legal(Position, int[], int)}, but only emits the moves that pass the filter. */
+    public static int legal(final Position position, final Filter filter, final int[] moves, final int start) {
+        final var currentColor = position.getCurrentColor();
+        final var opponentColor = currentColor.invert();
+        final var currentBB = position.getBB(currentColor);
+        final var opponentBB = position.getBB(opponentColor);
+        final var occupiedBB = currentBB | opponentBB;
+        final var kingSq = position.getKingIndex(currentColor);
+        final var checkersBB = attackersTo(position, kingSq, opponentColor, occupiedBB);
+        final var pinnedBB = pinnedPieces(position, kingSq);
+
+        final long filterBB;
+        switch (filter) {
+            case CAPTURES:
+                filterBB = opponentBB;
+                break;
+            case QUIETS:
+                filterBB = ~occupiedBB;
+                break;
+            default:
+                filterBB = ~currentBB;
+                break;
+        }
 
+        var end = generateKingMoves(position, filter, kingSq, checkersBB, filterBB, moves, start);
+        if (checkersBB != 0)
+            return generateEvasions(position, filter, kingSq, checkersBB, pinnedBB, filterBB, moves, end);
+
+        end = generatePawnMoves(position, filter, ~0L, kingSq, pinnedBB, ~0L, moves, end);
+        end = generatePieceMoves(position, Piece.Type.KNIGHT, kingSq, pinnedBB, filterBB, moves, end);
+        end = generatePieceMoves(position, Piece.Type.BISHOP, kingSq, pinnedBB, filterBB, moves, end);
+        end = generatePieceMoves(position, Piece.Type.ROOK, kingSq, pinnedBB, filterBB, moves, end);
+        end = generatePieceMoves(position, Piece.Type.QUEEN, kingSq, pinnedBB, filterBB, moves, end);
+        return end;
+    }
+
+    /**
+     * Returns the number of legal moves, the same as {@link #legal(Position, int[], int)} would write, without writing
+     * them: each group of moves is counted as the population of its legal target mask. Only pinned pawns and en passant
+     * captures are looked at one by one. This is what perft uses at its last ply.
+     */
+    public static int countLegal(final Position position) {
         final var currentColor = position.getCurrentColor();
-        final var epSquare = position.getEpSquare();
-        final var opponentBB = position.getBB(currentColor.invert());
-        final var emptyBB = ~position.getBB();
-        final var pawnBB = position.getBB(currentColor, Piece.Type.PAWN);
-        final var promotionRank = Promotion.rank(currentColor);
-
-        for (final var from : Bitboard.iterSquares(pawnBB)) {
-            moveBuilder.setFrom(from);
-
-            final var attacks = Motions.pawnAttacks(currentColor, from);
-            final var singlePush = Motions.pawnSinglePush(currentColor, from);
-            final var doublePush = Motions.pawnDoublePush(currentColor, from);
-
-            if (epSquare != null) {
-                final var epBB = Bitboard.fromSquare(epSquare);
-                if (0 != (attacks & epBB))
-                    moveList.add(
-                        moveBuilder
-                            .setTo(epSquare)
-                            .markEnpassantCapture().build()
-                    );
+        final var opponentColor = currentColor.invert();
+        final var currentBB = position.getBB(currentColor);
+        final var occupiedBB = position.getBB();
+        final var kingSq = position.getKingIndex(currentColor);
+        final var checkersBB = attackersTo(position, kingSq, opponentColor, occupiedBB);
+
+        final var attackedBB = attackedSquares(position, opponentColor, occupiedBB ^ 1L << kingSq);
+        var count = Long.bitCount(Motions.kingAttacks(kingSq) & ~currentBB & ~attackedBB);
+        if (checkersBB == 0) {
+            for (final var dir : CastlingDirection.valueList()) {
+                final var castlingDefinition = position.getCastlingRights().getDefinition(currentColor, dir);
+                if (castlingDefinition != null
+                    && 0 == (occupiedBB & castlingDefinition.getCannotBeOccupiedBB())
+                    && 0 == (attackedBB & castlingDefinition.getCannotBeAttackedBB())
+                ) count++;
             }
+        } else if ((checkersBB & checkersBB - 1) != 0) {
+            return count;
+        }
+
+        // A pinned piece can never resolve a check, and otherwise it is held to the line through its king
+        final var pinnedBB = pinnedPieces(position, kingSq);
+        final var checkMaskBB = checkersBB == 0
+            ? ~0L
+            : checkersBB | Motions.between(kingSq, Bitboard.bitScan(checkersBB));
+        final var targetBB = ~currentBB & checkMaskBB;
+        final var unpinnedBB = checkersBB == 0 ? ~0L : ~pinnedBB;
 
-            var toBB = singlePush & emptyBB;
-            if (toBB != 0L)
-                toBB |= doublePush & emptyBB;
-            toBB |= attacks & opponentBB;
-
-            for (final var to : Bitboard.iterSquares(toBB)) {
-                moveBuilder.setTo(to);
-                if (from.rank() == promotionRank) {
-                    for (final var type : Promotion.promotableTypes())
-                        moveList.add(moveBuilder.setPromotionType(type).build());
-                } else {
-                    moveList.add(moveBuilder.clearSpecial().build());
-                }
+        for (var bb = position.getBB(currentColor, Piece.Type.KNIGHT) & ~pinnedBB; bb != 0; bb &= bb - 1)
+            count += Long.bitCount(Motions.knightAttacks(Bitboard.bitScan(bb)) & targetBB);
+        final var queenBB = position.getBB(currentColor, Piece.Type.QUEEN);
+        for (var bb = (position.getBB(currentColor, Piece.Type.BISHOP) | queenBB) & unpinnedBB; bb != 0; bb &= bb - 1) {
+            final var from = Bitboard.bitScan(bb);
+            final var toBB = Motions.bishopAttacks(from, occupiedBB) & targetBB;
+            count += Long.bitCount(0 == (pinnedBB & 1L << from) ? toBB : toBB & Motions.line(kingSq, from));
+        }
+        for (var bb = (position.getBB(currentColor, Piece.Type.ROOK) | queenBB) & unpinnedBB; bb != 0; bb &= bb - 1) {
+            final var from = Bitboard.bitScan(bb);
+            final var toBB = Motions.rookAttacks(from, occupiedBB) & targetBB;
+            count += Long.bitCount(0 == (pinnedBB & 1L << from) ? toBB : toBB & Motions.line(kingSq, from));
+        }
+
+        final var pawnBB = position.getBB(currentColor, Piece.Type.PAWN) & unpinnedBB;
+        count += countPawnMoves(position, pawnBB & ~pinnedBB, checkMaskBB, ~0L);
+        for (var bb = pawnBB & pinnedBB; bb != 0; bb &= bb - 1) {
+            final var from = Bitboard.bitScan(bb);
+            count += countPawnMoves(position, 1L << from, checkMaskBB, Motions.line(kingSq, from));
+        }
+
+        final var epSq = position.getEpIndex();
+        if (epSq != Position.NO_SQUARE) {
+            for (var bb = Motions.pawnAttacks(opponentColor, epSq) & pawnBB; bb != 0; bb &= bb - 1) {
+                if (isLegalEnpassantCapture(position, kingSq, Bitboard.bitScan(bb), epSq, occupiedBB))
+                    count++;
             }
         }
+        return count;
     }
 
-    private static void generateKingMoves(final Position position, final List<Move> moveList) {
+    /** Counts the pushes and captures, promotions four times over, of the given pawns that land in both masks. */
+    private static int countPawnMoves(
+        final Position position,
+        final long pawnBB,
+        final long checkMaskBB,
+        final long lineBB
+    ) {
         final var currentColor = position.getCurrentColor();
-        final var kingSq = position.getKingSquare(currentColor);
-        final var moveBuilder = new Move.Builder().setFrom(kingSq);
+        final var maskBB = checkMaskBB & lineBB;
+        final var targetBB = position.getBB(currentColor.invert()) & maskBB;
+        final var emptyBB = ~position.getBB();
 
-        final var toBB = Motions.kingAttacks(kingSq) & ~position.getBB(currentColor);
-        for (final var to : Bitboard.iterSquares(toBB))
-            moveList.add(moveBuilder.setTo(to).build());
+        final var singlePushBB = Motions.pawnPushes(currentColor, pawnBB) & emptyBB;
+        final var doublePushBB = Motions.pawnPushes(currentColor, singlePushBB & doublePushRank(currentColor)) & emptyBB;
+        final var movesBB = singlePushBB & maskBB;
+        final var westBB = Motions.pawnWestAttacks(currentColor, pawnBB) & targetBB;
+        final var eastBB = Motions.pawnEastAttacks(currentColor, pawnBB) & targetBB;
 
-        for (final var dir : CastlingDirection.valueList()) {
-            final var castlingDefinition = position.getCastlingRights().getDefinition(currentColor, dir);
-            if (castlingDefinition == null) continue;
-            if (0 != (position.getBB() & castlingDefinition.getCannotBeOccupiedBB())) continue;
-            if (StreamSupport
-                .stream(Bitboard.iterSquares(castlingDefinition.getCannotBeAttackedBB()).spliterator(), false)
-                .anyMatch(sq -> isAttacked(position, sq, currentColor.invert()))
-            ) continue;
-            moveList.add(
-                moveBuilder
-                    .setTo(castlingDefinition.getKingTo())
-                    .markCastling()
-                    .build()
-            );
-        }
-    }
-
-    private static void generateKnightMoves(final Position position, final List<Move> moveList) {
-        final var moveBuilder = new Move.Builder();
+        final var lastRankBB = Bitboard.rank(currentColor == Color.WHITE ? 7 : 0);
+        final var promotionFactor = Promotion.promotableTypes().size();
+        return Long.bitCount(doublePushBB & maskBB)
+            + Long.bitCount(movesBB & ~lastRankBB) + promotionFactor * Long.bitCount(movesBB & lastRankBB)
+            + Long.bitCount(westBB & ~lastRankBB) + promotionFactor * Long.bitCount(westBB & lastRankBB)
+            + Long.bitCount(eastBB & ~lastRankBB) + promotionFactor * Long.bitCount(eastBB & lastRankBB);
+    }
+
+    /** Finds the pieces of the side to move that are pinned to its king. */
+    private static long pinnedPieces(final Position position, final int kingSq) {
         final var currentColor = position.getCurrentColor();
-        final var knightBB = position.getBB(currentColor, Piece.Type.KNIGHT);
-        final var notCurrentBB = ~position.getBB(currentColor);
+        final var opponentColor = currentColor.invert();
+        final var currentBB = position.getBB(currentColor);
+        final var opponentBB = position.getBB(opponentColor);
+        final var occupiedBB = currentBB | opponentBB;
+        final var opponentQueenBB = position.getBB(opponentColor, Piece.Type.QUEEN);
+        final var opponentDiagonalBB = position.getBB(opponentColor, Piece.Type.BISHOP) | opponentQueenBB;
+        final var opponentOrthogonalBB = position.getBB(opponentColor, Piece.Type.ROOK) | opponentQueenBB;
 
-        for (final var from : Bitboard.iterSquares(knightBB)) {
-            moveBuilder.setFrom(from);
-            final var toBB = Motions.knightAttacks(from) & notCurrentBB;
-            for (final var to : Bitboard.iterSquares(toBB))
-                moveList.add(moveBuilder.setTo(to).build());
+        // Sliders that would attack the king if only their own side's pieces could block them
+        var pinnedBB = 0L;
+        final var snipersBB
+            = attackersTo(position, kingSq, opponentColor, opponentBB) & (opponentDiagonalBB | opponentOrthogonalBB);
+        for (var bb = snipersBB; bb != 0; bb &= bb - 1) {
+            final var blockersBB = Motions.between(kingSq, Bitboard.bitScan(bb)) & occupiedBB;
+            if (blockersBB != 0 && (blockersBB & blockersBB - 1) == 0)
+                pinnedBB |= blockersBB & currentBB;
         }
+        return pinnedBB;
     }
 
-    private static void generateBishopMoves(final Position position, final List<Move> moveList) {
-        final var moveBuilder = new Move.Builder();
+    /**
+     * Tests whether a move taken from elsewhere, such as a hash or killer move, could have been generated in this
+     * position if pins and checks were ignored. Only a handful of table lookups are needed, so a stored move can be
+     * searched before any move is generated. Castling additionally requires the right and an empty path.
+     */
+    public static boolean isPseudoLegal(final Position position, final int move) {
+        if (move == PackedMove.NONE) return false;
         final var currentColor = position.getCurrentColor();
+        final var from = PackedMove.getFromIndex(move);
+        final var to = PackedMove.getToIndex(move);
+        final var fromBB = 1L << from;
+        final var toBB = 1L << to;
+        if (0 == (position.getBB(currentColor) & fromBB)) return false;
+        if (0 != (position.getBB(currentColor) & toBB)) return false;
+
         final var occupiedBB = position.getBB();
-        final var bishopBB = position.getBB(currentColor, Piece.Type.BISHOP);
-        final var notCurrentBB = ~position.getBB(currentColor);
+        final var isCapture = 0 != (occupiedBB & toBB);
+        final var type = Piece.typeOf(position.getPieceCodeAt(from));
 
-        for (final var from : Bitboard.iterSquares(bishopBB)) {
-            moveBuilder.setFrom(from);
-            final var toBB = Motions.bishopAttacks(from, occupiedBB) & notCurrentBB;
-            for (final var to : Bitboard.iterSquares(toBB))
-                moveList.add(moveBuilder.setTo(to).build());
+        if (PackedMove.isCastling(move)) {
+            if (type != Piece.Type.KING) return false;
+            final var castlingDefinition = position.getCastlingRights()
+                .getDefinition(currentColor, PackedMove.getCastlingDirection(move));
+            return castlingDefinition != null
+                && castlingDefinition.getKingFrom().ordinal() == from
+                && castlingDefinition.getKingTo().ordinal() == to
+                && 0 == (occupiedBB & castlingDefinition.getCannotBeOccupiedBB());
         }
+
+        if (type != Piece.Type.PAWN)
+            return !PackedMove.isPromotion(move)
+                && !PackedMove.isEnpassantCapture(move)
+                && 0 != (toBB & attacks(type, from, occupiedBB));
+
+        if (PackedMove.isEnpassantCapture(move))
+            return to == position.getEpIndex() && 0 != (Motions.pawnAttacks(currentColor, from) & toBB);
+
+        final var promotionType = PackedMove.getPromotionType(move);
+        if ((from >>> 3 == Promotion.rank(currentColor)) != (promotionType != null)) return false;
+        if (promotionType == Piece.Type.KING) return false;
+        if (isCapture) return 0 != (Motions.pawnAttacks(currentColor, from) & toBB);
+        final var singlePushBB = Motions.pawnSinglePush(currentColor, from) & ~occupiedBB;
+        return 0 != (singlePushBB & toBB)
+            || singlePushBB != 0 && 0 != (Motions.pawnDoublePush(currentColor, from) & ~occupiedBB & toBB);
     }
 
-    private static void generateRookMoves(final Position position, final List<Move> moveList) {
-        final var moveBuilder = new Move.Builder();
+    /**
+     * Tests whether a pseudo-legal move leaves the mover's king safe. Instead of making the move, the squares it empties
+     * and fills are applied to the occupancy bitboard and the king is probed from there, ignoring any piece it captures.
+     */
+    public static boolean isLegal(final Position position, final int move) {
         final var currentColor = position.getCurrentColor();
+        final var opponentColor = currentColor.invert();
+        final var from = PackedMove.getFromIndex(move);
+        final var to = PackedMove.getToIndex(move);
         final var occupiedBB = position.getBB();
-        final var rookBB = position.getBB(currentColor, Piece.Type.ROOK);
-        final var notCurrentBB = ~position.getBB(currentColor);
+        final var kingSq = position.getKingIndex(currentColor);
 
-        for (final var from : Bitboard.iterSquares(rookBB)) {
-            moveBuilder.setFrom(from);
-            final var toBB = Motions.rookAttacks(from, occupiedBB) & notCurrentBB;
-            for (final var to : Bitboard.iterSquares(toBB))
-                moveList.add(moveBuilder.setTo(to).build());
+        if (PackedMove.isCastling(move)) {
+            final var castlingDefinition = position.getCastlingRights()
+                .getDefinition(currentColor, PackedMove.getCastlingDirection(move));
+            for (var bb = castlingDefinition.getCannotBeAttackedBB(); bb != 0; bb &= bb - 1)
+                if (0 != attackersTo(position, Bitboard.bitScan(bb), opponentColor, occupiedBB)) return false;
+            return true;
         }
+        if (from == kingSq)
+            return 0 == attackersTo(position, to, opponentColor, occupiedBB ^ 1L << from);
+        if (PackedMove.isEnpassantCapture(move))
+            return isLegalEnpassantCapture(position, kingSq, from, to, occupiedBB);
+
+        final var afterBB = occupiedBB ^ 1L << from | 1L << to;
+        return 0 == (attackersTo(position, kingSq, opponentColor, afterBB) & ~(1L << to));
     }
 
-    private static void generateQueenMoves(final Position position, final List<Move> moveList) {
-        final var moveBuilder = new Move.Builder();
+    /** Returns the squares a non-pawn piece of the given type attacks from {@code from}. */
+    private static long attacks(final Piece.Type type, final int from, final long occupiedBB) {
+        switch (type) {
+            case KNIGHT:
+                return Motions.knightAttacks(from);
+            case BISHOP:
+                return Motions.bishopAttacks(from, occupiedBB);
+            case ROOK:
+                return Motions.rookAttacks(from, occupiedBB);
+            case QUEEN:
+                return Motions.queenAttacks(from, occupiedBB);
+            default:
+                return Motions.kingAttacks(from);
+        }
+    }
+
+    /**
+     * Generates the non-king replies to a check; king moves are generated separately. Under double check only the king
+     * can move. Otherwise a reply must capture the checker or block its ray, which pinned pieces can never do, so the
+     * few candidate squares are scanned for unpinned pieces that reach them instead of scanning every piece.
+     */
+    private static int generateEvasions(
+        final Position position,
+        final Filter filter,
+        final int kingSq,
+        final long checkersBB,
+        final long pinnedBB,
+        final long filterBB,
+        final int[] moves,
+        int end
+    ) {
+        if ((checkersBB & checkersBB - 1) != 0) return end;
+
         final var currentColor = position.getCurrentColor();
         final var occupiedBB = position.getBB();
+        final var movableBB = ~pinnedBB;
         final var queenBB = position.getBB(currentColor, Piece.Type.QUEEN);
-        final var notCurrentBB = ~position.getBB(currentColor);
+        final var knightBB = position.getBB(currentColor, Piece.Type.KNIGHT) & movableBB;
+        final var diagonalBB = (position.getBB(currentColor, Piece.Type.BISHOP) | queenBB) & movableBB;
+        final var orthogonalBB = (position.getBB(currentColor, Piece.Type.ROOK) | queenBB) & movableBB;
+        final var checkMaskBB = checkersBB | Motions.between(kingSq, Bitboard.bitScan(checkersBB));
+
+        end = generatePawnMoves(position, filter, movableBB, kingSq, pinnedBB, checkMaskBB, moves, end);
+
+        for (var toBB = checkMaskBB & filterBB; toBB != 0; toBB &= toBB - 1) {
+            final var to = Bitboard.bitScan(toBB);
+            final var fromBB
+                = Motions.knightAttacks(to) & knightBB
+                | Motions.bishopAttacks(to, occupiedBB) & diagonalBB
+                | Motions.rookAttacks(to, occupiedBB) & orthogonalBB;
+            for (var bb = fromBB; bb != 0; bb &= bb - 1)
+                moves[end++] = PackedMove.of(Bitboard.bitScan(bb), to);
+        }
+        return end;
+    }
+
+    /**
+     * Generates pawn moves set-wise: every push and capture direction is one shift of the whole pawn bitboard, and the
+     * from square of each target is recovered from the shift. Only en passant is handled pawn by pawn.
+     */
+    private static int generatePawnMoves(
+        final Position position,
+        final Filter filter,
+        final long fromMaskBB,
+        final int kingSq,
+        final long pinnedBB,
+        final long checkMaskBB,
+        final int[] moves,
+        int end
+    ) {
+        final var currentColor = position.getCurrentColor();
+        final var targetBB = position.getBB(currentColor.invert()) & checkMaskBB;
+        final var emptyBB = ~position.getBB();
+        final var pawnBB = position.getBB(currentColor, Piece.Type.PAWN) & fromMaskBB;
+        final var promotingBB = pawnBB & Bitboard.rank(Promotion.rank(currentColor));
+        final var otherBB = pawnBB ^ promotingBB;
+        final var forward = currentColor == Color.WHITE ? 8 : -8;
+
+        final var to = filter == Filter.QUIETS ? Position.NO_SQUARE : position.getEpIndex();
+        if (to != Position.NO_SQUARE) {
+            final var occupiedBB = position.getBB();
+            for (var bb = Motions.pawnAttacks(currentColor.invert(), to) & pawnBB; bb != 0; bb &= bb - 1) {
+                final var from = Bitboard.bitScan(bb);
+                if (isLegalEnpassantCapture(position, kingSq, from, to, occupiedBB))
+                    moves[end++] = PackedMove.enpassantCapture(from, to);
+            }
+        }
+
+        if (filter != Filter.CAPTURES) {
+            final var singlePushBB = Motions.pawnPushes(currentColor, otherBB) & emptyBB;
+            final var doublePushBB = Motions.pawnPushes(currentColor, singlePushBB & doublePushRank(currentColor)) & emptyBB;
+            end = writePawnMoves(singlePushBB & checkMaskBB, forward, kingSq, pinnedBB, moves, end);
+            end = writePawnMoves(doublePushBB & checkMaskBB, 2 * forward, kingSq, pinnedBB, moves, end);
+        }
+        if (filter != Filter.QUIETS) {
+            final var westBB = Motions.pawnWestAttacks(currentColor, otherBB) & targetBB;
+            final var eastBB = Motions.pawnEastAttacks(currentColor, otherBB) & targetBB;
+            end = writePawnMoves(westBB, forward - 1, kingSq, pinnedBB, moves, end);
+            end = writePawnMoves(eastBB, forward + 1, kingSq, pinnedBB, moves, end);
+        }
 
-        for (final var from : Bitboard.iterSquares(queenBB)) {
-            moveBuilder.setFrom(from);
-            final var toBB = Motions.queenAttacks(from, occupiedBB) & notCurrentBB;
-            for (final var to : Bitboard.iterSquares(toBB))
-                moveList.add(moveBuilder.setTo(to).build());
+        // Queen promotions count as captures and underpromotions as quiet moves, whether or not they capture
+        if (promotingBB != 0) {
+            final var promotionTypes = Promotion.promotableTypes(filter);
+            final var pushBB = Motions.pawnPushes(currentColor, promotingBB) & emptyBB & checkMaskBB;
+            final var westBB = Motions.pawnWestAttacks(currentColor, promotingBB) & targetBB;
+            final var eastBB = Motions.pawnEastAttacks(currentColor, promotingBB) & targetBB;
+            end = writePromotions(pushBB, forward, kingSq, pinnedBB, promotionTypes, moves, end);
+            end = writePromotions(westBB, forward - 1, kingSq, pinnedBB, promotionTypes, moves, end);
+            end = writePromotions(eastBB, forward + 1, kingSq, pinnedBB, promotionTypes, moves, end);
+        }
+        return end;
+    }
+
+    /** Returns the rank a pawn of the given color lands on after a single push from its starting rank. */
+    private static long doublePushRank(final Color color) {
+        return Bitboard.rank(color == Color.WHITE ? 2 : 5);
+    }
+
+    /**
+     * Writes a pawn move to each square in {@code toBB} from the square {@code shift} behind it. A pinned pawn may only
+     * move along the line through its king.
+     */
+    private static int writePawnMoves(
+        long toBB,
+        final int shift,
+        final int kingSq,
+        final long pinnedBB,
+        final int[] moves,
+        int end
+    ) {
+        for (; toBB != 0; toBB &= toBB - 1) {
+            final var to = Bitboard.bitScan(toBB);
+            final var from = to - shift;
+            if (0 == (pinnedBB & 1L << from) || 0 != (Motions.line(kingSq, from) & 1L << to))
+                moves[end++] = PackedMove.of(from, to);
+        }
+        return end;
+    }
+
+    private static int writePromotions(
+        long toBB,
+        final int shift,
+        final int kingSq,
+        final long pinnedBB,
+        final List<Piece.Type> promotionTypes,
+        final int[] moves,
+        int end
+    ) {
+        for (; toBB != 0; toBB &= toBB - 1) {
+            final var to = Bitboard.bitScan(toBB);
+            final var from = to - shift;
+            if (0 == (pinnedBB & 1L << from) || 0 != (Motions.line(kingSq, from) & 1L << to))
+                for (var i = 0; i < promotionTypes.size(); i++)
+                    moves[end++] = PackedMove.promotion(from, to, promotionTypes.get(i));
+        }
+        return end;
+    }
+
+    /**
+     * En passant is the one move that removes two pieces from a line through the king, so it is checked by replaying
+     * it on the occupancy bitboard. This also settles whether it resolves a check.
+     */
+    private static boolean isLegalEnpassantCapture(
+        final Position position,
+        final int kingSq,
+        final int from,
+        final int to,
+        final long occupiedBB
+    ) {
+        final var opponentColor = position.getCurrentColor().invert();
+        final var capturedBB = 1L << ((from & ~0b111) | (to & 0b111));
+        final var afterBB = occupiedBB ^ 1L << from ^ capturedBB | 1L << to;
+        return 0 == (attackersTo(position, kingSq, opponentColor, afterBB) & ~capturedBB);
+    }
+
+    private static int generateKingMoves(
+        final Position position,
+        final Filter filter,
+        final int kingSq,
+        final long checkersBB,
+        final long filterBB,
+        final int[] moves,
+        int end
+    ) {
+        final var currentColor = position.getCurrentColor();
+        final var opponentColor = currentColor.invert();
+        final var occupiedBB = position.getBB();
+
+        // With the king lifted off the board, a slider checking it also covers the squares behind it. Any line through
+        // the king's square that this exposes also means the king is in check, which already rules out castling.
+        final var attackedBB = attackedSquares(position, opponentColor, occupiedBB ^ 1L << kingSq);
+
+        for (var toBB = Motions.kingAttacks(kingSq) & filterBB & ~attackedBB; toBB != 0; toBB &= toBB - 1)
+            moves[end++] = PackedMove.of(kingSq, Bitboard.bitScan(toBB));
+
+        if (checkersBB != 0 || filter == Filter.CAPTURES) return end;
+
+        for (final var dir : CastlingDirection.valueList()) {
+            final var castlingDefinition = position.getCastlingRights().getDefinition(currentColor, dir);
+            if (castlingDefinition == null) continue;
+            if (0 != (occupiedBB & castlingDefinition.getCannotBeOccupiedBB())) continue;
+            if (0 != (attackedBB & castlingDefinition.getCannotBeAttackedBB())) continue;
+            moves[end++] = PackedMove.castling(kingSq, castlingDefinition.getKingTo().ordinal());
+        }
+        return end;
+    }
+
+    private static int generatePieceMoves(
+        final Position position,
+        final Piece.Type type,
+        final int kingSq,
+        final long pinnedBB,
+        final long targetBB,
+        final int[] moves,
+        int end
+    ) {
+        final var occupiedBB = position.getBB();
+        final var pieceBB = position.getBB(position.getCurrentColor(), type);
+
+        for (var fromBB = pieceBB; fromBB != 0; fromBB &= fromBB - 1) {
+            final var from = Bitboard.bitScan(fromBB);
+            var toBB = targetBB;
+            if (0 != (pinnedBB & 1L << from))
+                toBB &= Motions.line(kingSq, from);
+            switch (type) {
+                case KNIGHT:
+                    toBB &= Motions.knightAttacks(from);
+                    break;
+                case BISHOP:
+                    toBB &= Motions.bishopAttacks(from, occupiedBB);
+                    break;
+                case ROOK:
+                    toBB &= Motions.rookAttacks(from, occupiedBB);
+                    break;
+                default:
+                    toBB &= Motions.queenAttacks(from, occupiedBB);
+                    break;
+            }
+            for (; toBB != 0; toBB &= toBB - 1)
+                moves[end++] = PackedMove.of(from, Bitboard.bitScan(toBB));
         }
+        return end;
     }
 }
@@ -0,0 +1,110 @@
+package chess.move;
+
+import chess.basictypes.CastlingDirection;
+import chess.basictypes.Piece;
+import chess.basictypes.Square;
+
+/**
+ * A packed move is a 32-bit integer that represents a move. Bits 0-5 hold the from square, bits 6-11 hold the to
+ * square, bits 12-14 hold the ordinal of the promotion type (0 if the move is not a promotion), bit 15 marks an en
+ * passant capture and bit 16 marks castling. Since no move goes from a square to itself, 0 is never a valid move and is
+ * used to represent the absence of one.
+ */
+public class PackedMove {
+    private PackedMove() {}
+
+    public static final int NONE = 0;
+
+    private static final int SQUARE_MASK = 0x3f;
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PROMOTION_MASK = 0x7;
+    private static final int ENPASSANT_FLAG = 1 << 15;
+    private static final int CASTLING_FLAG = 1 << 16;
+
+    public static int of(final Square from, final Square to) {
+        return of(from.ordinal(), to.ordinal());
+    }
+
+    public static int of(final int from, final int to) {
+        return from | to << TO_SHIFT;
+    }
+
+    public static int promotion(final Square from, final Square to, final Piece.Type promotionType) {
+        return promotion(from.ordinal(), to.ordinal(), promotionType);
+    }
+
+    public static int promotion(final int from, final int to, final Piece.Type promotionType) {
+        return of(from, to) | promotionType.ordinal() << PROMOTION_SHIFT;
+    }
+
+    public static int enpassantCapture(final Square from, final Square to) {
+        return enpassantCapture(from.ordinal(), to.ordinal());
+    }
+
+    public static int enpassantCapture(final int from, final int to) {
+        return of(from, to) | ENPASSANT_FLAG;
+    }
+
+    public static int castling(final Square from, final Square to) {
+        return castling(from.ordinal(), to.ordinal());
+    }
+
+    public static int castling(final int from, final int to) {
+        return of(from, to) | CASTLING_FLAG;
+    }
+
+    public static int of(final Move move) {
+        if (move.isEnpassantCapture()) return enpassantCapture(move.getFrom(), move.getTo());
+        if (move.isCastling()) return castling(move.getFrom(), move.getTo());
+        if (move.getPromotionType() != null) return promotion(move.getFrom(), move.getTo(), move.getPromotionType());
+        return of(move.getFrom(), move.getTo());
+    }
+
+    public static Move toMove(final int move) {
+        if (move == NONE) return null;
+        return new Move(getFrom(move), getTo(move), getPromotionType(move), isEnpassantCapture(move), isCastling(move));
+    }
+
+    public static Square getFrom(final int move) {
+        return Square.of(getFromIndex(move));
+    }
+
+    public static Square getTo(final int move) {
+        return Square.of(getToIndex(move));
+    }
+
+    public static int getFromIndex(final int move) {
+        return move & SQUARE_MASK;
+    }
+
+    public static int getToIndex(final int move) {
+        return move >>> TO_SHIFT & SQUARE_MASK;
+    }
+
+    public static Piece.Type getPromotionType(final int move) {
+        final var ordinal = move >>> PROMOTION_SHIFT & PROMOTION_MASK;
+        return ordinal == 0 ? null : Piece.Type.valueList().get(ordinal);
+    }
+
+    public static boolean isPromotion(final int move) {
+        return 0 != (move & PROMOTION_MASK << PROMOTION_SHIFT);
+    }
+
+    public static boolean isEnpassantCapture(final int move) {
+        return 0 != (move & ENPASSANT_FLAG);
+    }
+
+    public static boolean isCastling(final int move) {
+        return 0 != (move & CASTLING_FLAG);
+    }
+
+    public static CastlingDirection getCastlingDirection(final int move) {
+        if (!isCastling(move)) throw new IllegalStateException("Move is not a castling move");
+        return getFromIndex(move) < getToIndex(move) ? CastlingDirection.OO : CastlingDirection.OOO;
+    }
+
+    public static String toString(final int move) {
+        return move == NONE ? "0000" : toMove(move).toString();
+    }
+}
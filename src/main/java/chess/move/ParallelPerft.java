@@ -0,0 +1,116 @@
+package chess.move;
+
+import chess.basictypes.Position;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft on a fork/join pool. The tree is split into one task per move for the first few plies, each task working on
+ * its own copy of the position, and the subtrees below the split run as ordinary sequential {@link Perft}s. Node counts
+ * are exact and the same as {@link Perft}'s. The sequential perfts may share a {@link PerftCache}. The pool belongs to
+ * this object and is shut down by {@link #close()}.
+ */
+public class ParallelPerft implements AutoCloseable {
+    /** Plies split into tasks when none is given; 20-40 root moves times their replies keeps every thread busy. */
+    public static final int DEFAULT_SPLIT_PLIES = 2;
+
+    // Subtrees this shallow are cheaper to count in place than to hand to another thread
+    private static final int MIN_TASK_DEPTH = 3;
+
+    private final Position position;
+    private final ForkJoinPool pool;
+    private final int splitPlies;
+    private final PerftCache cache;
+
+    public ParallelPerft(final Position position, final int threads) {
+        this(position, threads, DEFAULT_SPLIT_PLIES, null);
+    }
+
+    public ParallelPerft(final Position position, final int threads, final PerftCache cache) {
+        this(position, threads, DEFAULT_SPLIT_PLIES, cache);
+    }
+
+    public ParallelPerft(final Position position, final int threads, final int splitPlies, final PerftCache cache) {
+        this.position = Objects.requireNonNull(position);
+        this.pool = new ForkJoinPool(threads);
+        this.splitPlies = Math.max(splitPlies, 1);
+        this.cache = cache;
+    }
+
+    public long perft(final int depth) {
+        return pool.invoke(new PerftTask(new Position(position), depth, splitPlies));
+    }
+
+    /**
+     * Prints the node count below each legal move and the total, in the same order and format as {@link Perft}, and
+     * returns the total.
+     */
+    public long divide(final int depth) {
+        final var moves = new int[Movegen.MAX_MOVES];
+        final var end = Movegen.legal(position, moves, 0);
+        final var tasks = new PerftTask[end];
+        for (var i = 0; i < end; i++)
+            tasks[i] = new PerftTask(child(position, moves[i]), depth - 1, splitPlies - 1);
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                invokeAll(tasks);
+                return null;
+            }
+        });
+
+        var nodes = 0L;
+        for (var i = 0; i < end; i++) {
+            final var perftResults = tasks[i].join();
+            System.out.println(PackedMove.toString(moves[i]) + ": " + perftResults);
+            nodes += perftResults;
+        }
+        System.out.println("\nNodes searched: " + nodes);
+        return nodes;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private static Position child(final Position parent, final int move) {
+        final var child = new Position(parent);
+        Make.run(child, move);
+        return child;
+    }
+
+    private class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position position;
+        private final int depth;
+        private final int splitPlies;
+
+        PerftTask(final Position position, final int depth, final int splitPlies) {
+            this.position = position;
+            this.depth = depth;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Long compute() {
+            if (splitPlies <= 0 || depth < MIN_TASK_DEPTH)
+                return new Perft(position, cache).perft(depth);
+
+            final var moves = new int[Movegen.MAX_MOVES];
+            final var end = Movegen.legal(position, moves, 0);
+            final var tasks = new PerftTask[end];
+            for (var i = 0; i < end; i++)
+                tasks[i] = new PerftTask(child(position, moves[i]), depth - 1, splitPlies - 1);
+            invokeAll(tasks);
+
+            var nodes = 0L;
+            for (final var task : tasks)
+                nodes += task.join();
+            return nodes;
+        }
+    }
+}
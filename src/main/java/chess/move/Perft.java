@@ -1,49 +1,118 @@
 package chess.move;
 
-import chess.basictypes.Piece;
 import chess.basictypes.Position;
-import chess.basictypes.Square;
 
 import java.util.Objects;
 
 public class Perft {
+    // Subtrees shallower than this are cheaper to count than to look up
+    private static final int MIN_CACHED_DEPTH = 2;
+
     private final Position position;
+    private final PerftCache cache;
+    private boolean bulkCounting = true;
+    private int[] moveStack = new int[0];
+    private Position[] plyPositions = new Position[0];
 
     public Perft(final Position position) {
+        this(position, null);
+    }
+
+    /** Creates a perft that looks subtrees up in {@code cache}, which may be shared with other perfts, or null. */
+    public Perft(final Position position, final PerftCache cache) {
         this.position = Objects.requireNonNull(position);
+        this.cache = cache;
+    }
+
+    /**
+     * Turns counting the last ply with {@link Movegen#countLegal(Position)} on or off. It is on by default; with it off
+     * every leaf move is made and unmade, which exercises {@link Make} and {@link Unmake} down to the last ply.
+     */
+    public void setBulkCounting(final boolean bulkCounting) {
+        this.bulkCounting = bulkCounting;
+    }
+
+    public void make(final String move) {
+        Make.run(position, move, Movegen.legal(position));
     }
 
-    public Position.Snapshot make(final String move) {
-        return Make.run(position, move, Movegen.pseudoLegal(position));
+    private void reserve(final int depth) {
+        final var capacity = Math.max(depth, 1) * Movegen.MAX_MOVES;
+        if (moveStack.length < capacity)
+            moveStack = new int[capacity];
     }
 
     public long perft(final int depth) {
+        reserve(depth);
+        return perft(depth, 0);
+    }
+
+    private long perft(final int depth, final int start) {
         if (depth <= 0) return 1L;
+        if (depth == 1 && bulkCounting) return Movegen.countLegal(position);
 
+        final var cached = cache != null && depth >= MIN_CACHED_DEPTH;
+        if (cached) {
+            final var nodes = cache.get(position.getKey(), depth);
+            if (nodes >= 0) return nodes;
+        }
+
+        final var end = Movegen.legal(position, moveStack, start);
         var nodes = 0L;
-        for (final var move : Movegen.pseudoLegal(position)) {
-            final var snapshot = Make.run(position, move);
-            if (!Movegen.opponentKingIsAttacked(position))
-                nodes += perft(depth - 1);
-            Unmake.run(position, snapshot);
+        for (var i = start; i < end; i++) {
+            Make.run(position, moveStack[i]);
+            nodes += perft(depth - 1, end);
+            Unmake.run(position);
         }
+
+        if (cached) cache.put(position.getKey(), depth, nodes);
         return nodes;
     }
 
-    public void divide(final int depth) {
+    /**
+     * Counts the same nodes as {@link #perft(int)}, but copy-make style: each ply copies its parent into a position of
+     * its own and makes the move there, so nothing is ever unmade. The root position is not touched.
+     */
+    public long copyMakePerft(final int depth) {
+        reserve(depth);
+        if (plyPositions.length < depth + 1) {
+            plyPositions = new Position[depth + 1];
+            for (var i = 0; i < plyPositions.length; i++)
+                plyPositions[i] = new Position();
+        }
+        plyPositions[0].copyFrom(position);
+        return copyMakePerft(depth, 0, 0);
+    }
+
+    private long copyMakePerft(final int depth, final int ply, final int start) {
+        if (depth <= 0) return 1L;
+        if (depth == 1 && bulkCounting) return Movegen.countLegal(plyPositions[ply]);
+
+        final var parent = plyPositions[ply];
+        final var child = plyPositions[ply + 1];
+        final var end = Movegen.legal(parent, moveStack, start);
         var nodes = 0L;
-        for (final var move : Movegen.pseudoLegal(position)) {
-            System.out.print(move + ": ");
-            final var snapshot = Make.run(position, move);
-            if (Movegen.opponentKingIsAttacked(position)) {
-                System.out.println("Illegal");
-            } else {
-                final var perftResults = perft(depth - 1);
-                System.out.println(perftResults);
-                nodes += perftResults;
-            }
-            Unmake.run(position, snapshot);
+        for (var i = start; i < end; i++) {
+            Make.run(child.copyFrom(parent), moveStack[i]);
+            nodes += copyMakePerft(depth - 1, ply + 1, end);
+        }
+        return nodes;
+    }
+
+    /** Prints the node count below each legal move and the total, and returns the total. */
+    public long divide(final int depth) {
+        reserve(depth);
+        final var end = Movegen.legal(position, moveStack, 0);
+        var nodes = 0L;
+        for (var i = 0; i < end; i++) {
+            final var move = moveStack[i];
+            Make.run(position, move);
+            final var perftResults = perft(depth - 1, end);
+            Unmake.run(position);
+            System.out.println(PackedMove.toString(move) + ": " + perftResults);
+            nodes += perftResults;
         }
         System.out.println("\nNodes searched: " + nodes);
+        return nodes;
     }
 }
@@ -0,0 +1,94 @@
+package chess.move;
+
+import chess.basictypes.HashTables;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of perft subtree counts, keyed by Zobrist key and remaining depth, that any number of threads may
+ * share without locking. The table is a power-of-two array of two-entry buckets: the first entry keeps the deepest
+ * subtree that hashed to the bucket and the second takes whatever does not displace it, so that the expensive counts
+ * survive a flood of shallow ones.
+ * <p>
+ * An entry is two longs: the count and depth packed together, and that word xored with the key. A reader only trusts
+ * an entry whose words xor back to its own key, so an entry torn by two threads writing it at once reads as a miss
+ * instead of a wrong count. Like any hash of positions, the cache assumes distinct positions do not share a 64-bit key.
+ */
+public class PerftCache {
+    private static final int DEPTH_BITS = 8;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    private static final int BYTES_PER_BUCKET = ENTRIES_PER_BUCKET * LONGS_PER_ENTRY * Long.BYTES;
+
+    private final long[] table;
+    private final int bucketMask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /** Creates the largest cache that fits in {@code megabytes}, see {@link HashTables#bucketCount(int, int)}. */
+    public PerftCache(final int megabytes) {
+        final var buckets = HashTables.bucketCount(megabytes, BYTES_PER_BUCKET);
+        table = new long[buckets * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY];
+        bucketMask = buckets - 1;
+    }
+
+    /** Returns the cached node count of the position's subtree of the given depth, or -1 if it is not cached. */
+    public long get(final long key, final int depth) {
+        probes.increment();
+        final var i = index(key);
+        for (var j = i; j < i + ENTRIES_PER_BUCKET * LONGS_PER_ENTRY; j += LONGS_PER_ENTRY) {
+            final var data = table[j + 1];
+            if ((table[j] ^ data) == key && (data & DEPTH_MASK) == depth) {
+                hits.increment();
+                return data >>> DEPTH_BITS;
+            }
+        }
+        return -1L;
+    }
+
+    public void put(final long key, final int depth, final long nodes) {
+        final var i = index(key);
+        final var data = nodes << DEPTH_BITS | depth;
+        final var j = (table[i + 1] & DEPTH_MASK) <= depth ? i : i + LONGS_PER_ENTRY;
+        table[j] = key ^ data;
+        table[j + 1] = data;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        probes.reset();
+        hits.reset();
+    }
+
+    public int getSizeMb() {
+        return (int) ((long) table.length * Long.BYTES >>> 20);
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Returns the share of probes that found their count, from 0 to 1. */
+    public double getHitRate() {
+        final var probeCount = getProbes();
+        return probeCount == 0 ? 0.0 : (double) getHits() / probeCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "perft cache %d MB: %d probes, %d hits (%.1f%%)",
+            getSizeMb(), getProbes(), getHits(), 100 * getHitRate()
+        );
+    }
+
+    private int index(final long key) {
+        return ((int) (key >>> 32) & bucketMask) * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY;
+    }
+}
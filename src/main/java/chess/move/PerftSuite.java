@@ -0,0 +1,157 @@
+package chess.move;
+
+import chess.basictypes.Position;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks a perft suite: an EPD file whose lines give expected counts as {@code ;D1 20 ;D2 400 ...} operations. The
+ * lines are streamed to a thread pool, one position per task, and each position is counted with a sequential
+ * {@link Perft} at every depth the line gives, up to a cap. Results are printed in file order as they become available,
+ * one line per position with its time, followed by a summary with the aggregate nodes per second.
+ * <p>
+ * Run with {@code java -cp target/classes chess.move.PerftSuite <file> [max depth] [threads]}. The exit status is 1 if
+ * any count was wrong.
+ */
+public class PerftSuite {
+    // Results waiting to be printed per thread, enough to keep every thread busy without reading the whole file ahead
+    private static final int QUEUED_PER_THREAD = 4;
+
+    private final int maxDepth;
+    private final int threads;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    public PerftSuite(final int maxDepth, final int threads) {
+        this.maxDepth = Math.min(maxDepth, EpdRecord.MAX_PERFT_DEPTH);
+        this.threads = threads;
+    }
+
+    /** Checks every line read from {@code reader}, reporting to {@code out}, and returns the number of failed lines. */
+    public int run(final BufferedReader reader, final PrintStream out) throws IOException {
+        final var pool = Executors.newFixedThreadPool(threads);
+        final var pending = new ArrayDeque<Future<Result>>();
+        final var totals = new Result();
+        final var startTime = System.nanoTime();
+        var positions = 0;
+        try {
+            var lineNumber = 0;
+            for (String line; (line = reader.readLine()) != null; ) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                pending.add(submit(pool, line, lineNumber));
+                positions++;
+                if (pending.size() >= threads * QUEUED_PER_THREAD)
+                    totals.add(report(pending.remove(), out));
+            }
+            while (!pending.isEmpty())
+                totals.add(report(pending.remove(), out));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        final var seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+        out.printf(
+            "%d positions, %d failed, %d nodes in %.1f s, %.0f nps%n",
+            positions, totals.failures, totals.nodes, seconds, totals.nodes / seconds
+        );
+        return totals.failures;
+    }
+
+    private Future<Result> submit(final ExecutorService pool, final String line, final int lineNumber) {
+        return pool.submit(() -> workers.get().check(line, lineNumber, maxDepth));
+    }
+
+    private static Result report(final Future<Result> future, final PrintStream out) {
+        final Result result;
+        try {
+            result = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for perft results", e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Perft task failed", e.getCause());
+        }
+        out.println(result.message);
+        return result;
+    }
+
+    /** The scratch objects of one pool thread, reused for every line that thread checks. */
+    private static class Worker {
+        private final EpdParser parser = new EpdParser(true);
+        private final EpdRecord record = new EpdRecord();
+        private final Position position = new Position();
+        private final Perft perft = new Perft(position);
+
+        Result check(final String line, final int lineNumber, final int maxDepth) {
+            final var result = new Result();
+            final var startTime = System.nanoTime();
+            try {
+                parser.parse(line, position, record);
+            } catch (final RuntimeException e) {
+                result.failures = 1;
+                result.message = String.format("%6d ERROR %s", lineNumber, e.getMessage());
+                return result;
+            }
+            final var fen = position.toFen();
+
+            var depth = 0;
+            for (var d = 1; d <= Math.min(maxDepth, record.getMaxPerftDepth()); d++) {
+                final var expected = record.getPerftCount(d);
+                if (expected < 0) continue;
+                final var actual = perft.perft(d);
+                result.nodes += actual;
+                if (actual != expected) {
+                    result.failures = 1;
+                    result.message = String.format(
+                        "%6d FAIL  D%d expected %d, got %d  %s", lineNumber, d, expected, actual, fen
+                    );
+                    return result;
+                }
+                depth = d;
+            }
+
+            if (depth == 0) {
+                result.message = String.format("%6d no perft counts  %s", lineNumber, fen);
+                return result;
+            }
+            final var seconds = (System.nanoTime() - startTime) / 1e9;
+            result.message = String.format(
+                "%6d ok    D%d %d nodes in %.3f s  %s", lineNumber, depth, record.getPerftCount(depth), seconds, fen
+            );
+            return result;
+        }
+    }
+
+    private static class Result {
+        private int failures;
+        private long nodes;
+        private String message;
+
+        void add(final Result other) {
+            failures += other.failures;
+            nodes += other.nodes;
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: PerftSuite <file> [max depth] [threads]");
+            return;
+        }
+        final var maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : EpdRecord.MAX_PERFT_DEPTH;
+        final var threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try (final var reader = Files.newBufferedReader(Path.of(args[0]))) {
+            final var failures = new PerftSuite(maxDepth, threads).run(reader, System.out);
+            if (failures > 0) System.exit(1);
+        }
+    }
+}
@@ -14,8 +14,26 @@ class Promotion {
             Arrays.asList(Piece.Type.KNIGHT, Piece.Type.BISHOP, Piece.Type.ROOK, Piece.Type.QUEEN)
         );
 
+    private static final List<Piece.Type> queenPromotionTypes = Collections.singletonList(Piece.Type.QUEEN);
+    private static final List<Piece.Type> underpromotionTypes =
+        Collections.unmodifiableList(
+            Arrays.asList(Piece.Type.KNIGHT, Piece.Type.BISHOP, Piece.Type.ROOK)
+        );
+
     public static List<Piece.Type> promotableTypes() { return promotableTypes; }
 
+    /** Returns the promotion types that a generator call with the given filter emits. */
+    public static List<Piece.Type> promotableTypes(final Movegen.Filter filter) {
+        switch (filter) {
+            case CAPTURES:
+                return queenPromotionTypes;
+            case QUIETS:
+                return underpromotionTypes;
+            default:
+                return promotableTypes;
+        }
+    }
+
     public static int rank(final Color color) {
         return Objects.requireNonNull(color) == Color.WHITE ? 6 : 1;
     }
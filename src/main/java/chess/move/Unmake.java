@@ -5,71 +5,75 @@ import chess.basictypes.*;
 public class Unmake {
     private static void common(
             final Position position,
-            final Square from,
-            final Square to,
-            final Piece moved,
-            final Piece captured
+            final int from,
+            final int to,
+            final int moved,
+            final int captured
     ) {
-        final var fromBB = Bitboard.fromSquare(from);
-        final var toBB = Bitboard.fromSquare(to);
-        final var motionBB = fromBB | toBB;
+        final var toBB = 1L << to;
 
-        position.xorBB(moved, motionBB);
-        position.setPieceAt(from, moved);
-        position.setPieceAt(to, captured);
+        position.xorBB(moved, 1L << from | toBB);
+        position.setPieceCodeAt(from, moved);
+        position.setPieceCodeAt(to, captured);
 
-        if (captured != null)
+        if (captured != Position.EMPTY)
             position.xorBB(captured, toBB);
     }
 
-    public static void run(final Position position, final Position.Snapshot snapshot) {
+    /** Takes back the move on top of the position's undo stack, which must not be a null move. */
+    public static void run(final Position position) {
+        assert position.getLastMove() != PackedMove.NONE : "Null moves are taken back with Unmake.runNull";
         final var opponentColor = position.getCurrentColor();
         final var currentColor = opponentColor.invert();
+        final var move = position.getLastMove();
+        final var captured = position.getLastCapturedCode();
 
+        position.popUndo();
         position.setCurrentColor(currentColor);
-        position.setCastlingRights(snapshot.getCastlingRights());
-        position.setEpSquare(snapshot.getEpSquare());
-        position.setHalfmoveClock(snapshot.getHalfmoveClock());
         if (currentColor == Color.BLACK)
             position.setFullmoveCounter(position.getFullmoveCounter() - 1);
 
-        final var move = snapshot.getMove();
-        final var from = move.getFrom();
-        final var to = move.getTo();
-        final var captured = snapshot.getCapturedPiece();
-        final Piece moved;
+        final var from = PackedMove.getFromIndex(move);
+        final var to = PackedMove.getToIndex(move);
+        final int moved;
 
-        if (move.getPromotionType() == null) {
-            moved = position.getPieceAt(to);
+        if (!PackedMove.isPromotion(move)) {
+            moved = position.getPieceCodeAt(to);
         } else {
-            moved = Piece.of(currentColor, Piece.Type.PAWN);
-            final var promotion = Piece.of(currentColor, move.getPromotionType());
-            final var toBB = Bitboard.fromSquare(to);
+            moved = Piece.code(currentColor, Piece.Type.PAWN);
+            final var promotion = Piece.code(currentColor, PackedMove.getPromotionType(move));
+            final var toBB = 1L << to;
             position.xorBB(promotion, toBB);
             position.xorBB(moved, toBB);
-            position.setPieceAt(to, moved);
+            position.setPieceCodeAt(to, moved);
         }
 
         common(position, from, to, moved, captured);
-        if (moved.type() == Piece.Type.KING && move.isCastling()) {
-            final var rook = Piece.of(currentColor, Piece.Type.ROOK);
-            final var castlingDef = CastlingDefinition.of(currentColor, move.getCastlingDirection());
-            final var rookFrom = castlingDef.getRookFrom();
-            final var rookTo = castlingDef.getRookTo();
-            final var rookMotionBB
-                    = Bitboard.fromSquare(rookFrom)
-                    | Bitboard.fromSquare(rookTo);
-            position.xorBB(rook, rookMotionBB);
-            position.setPieceAt(rookFrom, rook);
-            position.setPieceAt(rookTo, null);
-        } else if (moved.type() == Piece.Type.PAWN && move.isEnpassantCapture()) {
-            final var actualCaptured = Piece.of(opponentColor, Piece.Type.PAWN);
-            final var capturedSq = Square.at(to.file(), from.rank());
-            final var capturedBB = Bitboard.fromSquare(capturedSq);
-            position.xorBB(actualCaptured, capturedBB);
-            position.setPieceAt(capturedSq, actualCaptured);
+        if (PackedMove.isCastling(move)) {
+            final var rook = Piece.code(currentColor, Piece.Type.ROOK);
+            final var castlingDef = CastlingDefinition.of(currentColor, PackedMove.getCastlingDirection(move));
+            final var rookFrom = castlingDef.getRookFrom().ordinal();
+            final var rookTo = castlingDef.getRookTo().ordinal();
+            position.xorBB(rook, 1L << rookFrom | 1L << rookTo);
+            position.setPieceCodeAt(rookFrom, rook);
+            position.setPieceCodeAt(rookTo, Position.EMPTY);
+        } else if (PackedMove.isEnpassantCapture(move)) {
+            final var actualCaptured = Piece.code(opponentColor, Piece.Type.PAWN);
+            final var capturedSq = (from & ~0b111) | (to & 0b111);
+            position.xorBB(actualCaptured, 1L << capturedSq);
+            position.setPieceCodeAt(capturedSq, actualCaptured);
         }
 
         assert position.validate() == null : position.validate();
     }
+
+    /** Takes back a null move made by {@link Make#runNull(Position)}. */
+    public static void runNull(final Position position) {
+        assert position.getLastMove() == PackedMove.NONE : "Last move is not a null move";
+        final var currentColor = position.getCurrentColor().invert();
+        position.popUndo();
+        position.setCurrentColor(currentColor);
+        if (currentColor == Color.BLACK)
+            position.setFullmoveCounter(position.getFullmoveCounter() - 1);
+    }
 }
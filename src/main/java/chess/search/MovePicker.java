@@ -0,0 +1,166 @@
+package chess.search;
+
+import chess.basictypes.Piece;
+import chess.basictypes.Position;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+
+/**
+ * Hands out the moves of one alpha-beta node in stages, generating each group of moves only when the previous stages
+ * failed to produce a cutoff: the hash move, captures that do not lose material, killers, quiet moves (including
+ * underpromotions) and finally losing captures. Like {@link OrderedMoveList}, a picker is reused at every node of its
+ * ply and keeps its moves in the search's shared move stack starting at the index it is given.
+ */
+public class MovePicker {
+    private enum Stage { HASH, GENERATE_CAPTURES, GOOD_CAPTURES, KILLERS, GENERATE_QUIETS, QUIETS, BAD_CAPTURES, DONE }
+
+    private final int[] moves;
+    private final int[] scores;
+    private final int[] killers = new int[2];
+    private Position position;
+    private Stage stage;
+    private int hashMove;
+    private int killerIndex;
+    private int cursor;
+    private int capturesEnd;
+    private int quietCursor;
+    private int end;
+
+    public MovePicker(final int[] moves, final int[] scores) {
+        this.moves = moves;
+        this.scores = scores;
+    }
+
+    public void init(
+        final Position position,
+        final int start,
+        final int hashMove,
+        final int killer1,
+        final int killer2
+    ) {
+        this.position = position;
+        this.stage = Stage.HASH;
+        this.hashMove = hashMove;
+        this.killers[0] = killer1;
+        // Two equal killers would otherwise return the move, and search its subtree, twice
+        this.killers[1] = killer2 == killer1 ? PackedMove.NONE : killer2;
+        this.killerIndex = 0;
+        this.cursor = start;
+        this.capturesEnd = start;
+        this.end = start;
+    }
+
+    /** Returns the index one past the last move this picker has written to the move stack so far. */
+    public int getEnd() { return end; }
+
+    /** Returns the next move to search, or {@link PackedMove#NONE} once every legal move has been returned. */
+    public int next() {
+        while (true) {
+            switch (stage) {
+                case HASH:
+                    stage = Stage.GENERATE_CAPTURES;
+                    if (isLegal(hashMove)) return hashMove;
+                    break;
+
+                case GENERATE_CAPTURES:
+                    end = Movegen.legal(position, Movegen.Filter.CAPTURES, moves, cursor);
+                    capturesEnd = end;
+                    for (var i = cursor; i < end; i++)
+                        scores[i] = scoreCapture(moves[i]);
+                    stage = Stage.GOOD_CAPTURES;
+                    break;
+
+                case GOOD_CAPTURES:
+                    if (cursor < capturesEnd) {
+                        selectBest(cursor, capturesEnd);
+                        if (scores[cursor] >= 0) {
+                            final var move = moves[cursor++];
+                            if (move != hashMove) return move;
+                            break;
+                        }
+                    }
+                    stage = Stage.KILLERS;
+                    break;
+
+                case KILLERS:
+                    if (killerIndex < killers.length) {
+                        final var killer = killers[killerIndex++];
+                        if (killer != hashMove && isQuiet(killer) && isLegal(killer)) return killer;
+                        break;
+                    }
+                    stage = Stage.GENERATE_QUIETS;
+                    break;
+
+                case GENERATE_QUIETS:
+                    end = Movegen.legal(position, Movegen.Filter.QUIETS, moves, capturesEnd);
+                    quietCursor = capturesEnd;
+                    stage = Stage.QUIETS;
+                    break;
+
+                case QUIETS:
+                    if (quietCursor < end) {
+                        final var move = moves[quietCursor++];
+                        if (move != hashMove && move != killers[0] && move != killers[1]) return move;
+                        break;
+                    }
+                    stage = Stage.BAD_CAPTURES;
+                    break;
+
+                case BAD_CAPTURES:
+                    if (cursor < capturesEnd) {
+                        selectBest(cursor, capturesEnd);
+                        final var move = moves[cursor++];
+                        if (move != hashMove) return move;
+                        break;
+                    }
+                    stage = Stage.DONE;
+                    break;
+
+                default:
+                    return PackedMove.NONE;
+            }
+        }
+    }
+
+    /** Checks a move that was not produced by this node's generator, such as a hash or killer move. */
+    private boolean isLegal(final int move) {
+        return Movegen.isPseudoLegal(position, move) && Movegen.isLegal(position, move);
+    }
+
+    /** Tests whether the generator would emit the move under {@link Movegen.Filter#QUIETS}. */
+    private boolean isQuiet(final int move) {
+        return position.getPieceCodeAt(PackedMove.getToIndex(move)) == Position.EMPTY
+            && !PackedMove.isEnpassantCapture(move)
+            && PackedMove.getPromotionType(move) != Piece.Type.QUEEN;
+    }
+
+    /** Scores captures by MVV-LVA. Captures that lose material in a static exchange score below zero. */
+    private int scoreCapture(final int move) {
+        final var attacker = Piece.typeCode(position.getPieceCodeAt(PackedMove.getFromIndex(move)));
+        final var victim = position.getPieceCodeAt(PackedMove.getToIndex(move));
+
+        var score = 0;
+        if (PackedMove.isEnpassantCapture(move))
+            score += Piece.Type.PAWN.ordinal() * 10 + Piece.Type.count() - attacker;
+        else if (victim != Position.EMPTY)
+            score += Piece.typeCode(victim) * 10 + Piece.Type.count() - attacker;
+        if (PackedMove.isPromotion(move))
+            score += PackedMove.getPromotionType(move).ordinal() * 10;
+        return StaticExchange.isAtLeast(position, move, 0) ? score : score - 1000;
+    }
+
+    private void selectBest(final int from, final int to) {
+        var bestIndex = from;
+        for (var i = from + 1; i < to; i++)
+            if (scores[i] > scores[bestIndex])
+                bestIndex = i;
+
+        final var tempMove = moves[from];
+        moves[from] = moves[bestIndex];
+        moves[bestIndex] = tempMove;
+
+        final var tempScore = scores[from];
+        scores[from] = scores[bestIndex];
+        scores[bestIndex] = tempScore;
+    }
+}
@@ -2,85 +2,68 @@ package chess.search;
 
 import chess.basictypes.Piece;
 import chess.basictypes.Position;
-import chess.move.Move;
-import chess.move.Movegen;
-
-import java.util.*;
-
-public class OrderedMoveList implements Iterable<Move> {
-    private final ArrayList<Move> moves = new ArrayList<>();
-    private final ArrayList<Integer> scores = new ArrayList<>();
-
-    public OrderedMoveList(final Position position, final List<Move> moveList) {
-        for (final var move : moveList)
-            add(move, position);
+import chess.move.PackedMove;
+
+/**
+ * Orders the moves that one ply owns in a search's move stack. Moves live in {@code moves[start, end)} and their scores
+ * in the same range of a parallel score array, so a list can be reused at every node of its ply without allocating.
+ */
+public class OrderedMoveList {
+    private final int[] moves;
+    private final int[] scores;
+    private int end;
+    private int cursor;
+
+    public OrderedMoveList(final int[] moves, final int[] scores) {
+        this.moves = moves;
+        this.scores = scores;
     }
 
-    public static OrderedMoveList pseudoLegal(final Position position) {
-        return new OrderedMoveList(position, Movegen.pseudoLegal(position));
+    public void init(final Position position, final int start, final int end) {
+        this.end = end;
+        this.cursor = start;
+        for (var i = start; i < end; i++)
+            scores[i] = mvvlva(moves[i], position);
     }
 
-    public List<Move> getMoves() { return Collections.unmodifiableList(moves); }
-
-    @Override
-    public Iterator<Move> iterator() {
-        return new Iterator<Move>() {
-            private int i = 0;
-
-            @Override
-            public boolean hasNext() {
-                return i < moves.size();
-            }
+    public boolean hasNext() {
+        return cursor < end;
+    }
 
-            @Override
-            public Move next() {
-                var bestIndex = i;
-                for (var j = i + 1; j < scores.size(); j++)
-                    if (scores.get(j) > bestIndex)
-                        bestIndex = j;
-                swap(i, bestIndex);
-                return moves.get(i++);
-            }
-        };
+    /** Returns the highest scoring move that has not been returned yet. */
+    public int next() {
+        var bestIndex = cursor;
+        for (var j = cursor + 1; j < end; j++)
+            if (scores[j] > scores[bestIndex])
+                bestIndex = j;
+        swap(cursor, bestIndex);
+        return moves[cursor++];
     }
 
-    private int mvvlva(final Move move, final Position position) {
-        if (move.isEnpassantCapture() || position.getPieceAt(move.getTo()) != null) {
-            final var attackerVal = position.getPieceAt(move.getFrom()).type().ordinal();
-            final var victimVal = move.isEnpassantCapture()
+    private int mvvlva(final int move, final Position position) {
+        final var promotionBonus = PackedMove.isPromotion(move)
+            ? PackedMove.getPromotionType(move).ordinal() * 10
+            : 0;
+        final var isEnpassantCapture = PackedMove.isEnpassantCapture(move);
+        final var victim = position.getPieceCodeAt(PackedMove.getToIndex(move));
+        if (isEnpassantCapture || victim != Position.EMPTY) {
+            final var attackerVal = Piece.typeCode(position.getPieceCodeAt(PackedMove.getFromIndex(move)));
+            final var victimVal = isEnpassantCapture
                 ? Piece.Type.PAWN.ordinal()
-                : position.getPieceAt(move.getTo()).type().ordinal();
-            return victimVal * 10 + Piece.Type.count() - attackerVal;
+                : Piece.typeCode(victim);
+            return victimVal * 10 + Piece.Type.count() - attackerVal + promotionBonus;
         }
 
-        return 0;
-    }
-
-    public int indexOf(final Move move) {
-        return moves.indexOf(move);
-    }
-
-    public void setScore(final int index, final int score) {
-        scores.set(index, score);
-    }
-
-    public void add(final Move move, final Position position) {
-        moves.add(Objects.requireNonNull(move));
-        scores.add(mvvlva(move, position));
-    }
-
-    public Move remove(final int index) {
-        scores.remove(index);
-        return moves.remove(index);
+        return promotionBonus;
     }
 
     public void swap(final int i, final int j) {
-        final var tempMove = moves.get(i);
-        moves.set(i, moves.get(j));
-        moves.set(j, tempMove);
+        final var tempMove = moves[i];
+        moves[i] = moves[j];
+        moves[j] = tempMove;
 
-        final var tempScore = scores.get(i);
-        scores.set(i, scores.get(j));
-        scores.set(j, tempScore);
+        final var tempScore = scores[i];
+        scores[i] = scores[j];
+        scores[j] = tempScore;
     }
 }
@@ -1,32 +1,39 @@
 package chess.search;
 
 import chess.basictypes.Position;
-import chess.basictypes.Zobrist;
 import chess.evaluation.Evaluator;
 import chess.move.Make;
 import chess.move.Move;
 import chess.move.Movegen;
+import chess.move.PackedMove;
 import chess.move.Unmake;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
+/**
+ * Iterative deepening alpha-beta search. With more than one thread the search is a lazy SMP: helper threads run their
+ * own iterative deepening on copies of the position, sharing only the transposition table and the stop flag, while the
+ * calling thread searches every depth and reports. When it finishes it stops the helpers and plays the best move of
+ * whichever thread completed the deepest iteration.
+ */
 public class Search {
     public static final int MAX_DEPTH = 64;
+    public static final int MAX_PLY = 2 * MAX_DEPTH;
+    public static final int MAX_THREADS = 256;
+    /** Scores at least this far from zero are mate scores. */
+    public static final int MATE_BOUND = -Evaluator.MATE_VALUE - MAX_PLY;
 
     private final Position position;
     private final SearchConfig config;
-    private final ArrayList<Position.Snapshot> history = new ArrayList<>();
-    private final Move[][] killers = new Move[MAX_DEPTH + 1][2];
-    private final PrincipleVariationTable pvTable = new PrincipleVariationTable();
-
-    private int nodesSearched;
+    private TranspositionTable table = new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+    private final List<SearchWorker> workers = new ArrayList<>();
 
     public Search(final Position position, final SearchConfig config) {
         this.position = Objects.requireNonNull(position);
         this.config = Objects.requireNonNull(config);
+        workers.add(new SearchWorker(0, position, config));
     }
 
     public Position getPosition() {
@@ -37,160 +44,100 @@ public class Search {
         return config;
     }
 
-    private void reset() {
-        pvTable.clear();
-        for (final var inner : killers)
-            Arrays.fill(inner, null);
-        nodesSearched = 0;
+    /** Replaces the transposition table with an empty one of the given size, clamped to what a table can hold. */
+    public void setHashSize(final int megabytes) {
+        table = new TranspositionTable(megabytes);
     }
 
-    public void make(final String move) {
-        history.add(Make.run(position, move, Movegen.pseudoLegal(position)));
+    public void clearHash() {
+        table.clear();
     }
 
-    public boolean isRepetition() {
-        final var key = Zobrist.hash(position);
-        for (var i = history.size() - 2;
-             i >= history.size() - position.getHalfmoveClock();
-             i -= 2
-        )
-            if (key == history.get(i).getKey()) return true;
-        return false;
+    public int getThreads() {
+        return workers.size();
     }
 
-    private int qsearch(int alpha, final int beta) {
-        if ((nodesSearched & 2047) == 0) {
-            if (System.currentTimeMillis() > config.getStopTime()) config.stop();
-        }
-
-        nodesSearched++;
-        if (isRepetition() || position.getHalfmoveClock() >= 100) return Evaluator.DRAW_VALUE;
-        var score = Evaluator.run(position);
-        if (score >= beta) return beta;
-        if (score > alpha) alpha = score;
-        if (history.size() >= config.getMaxDepth()) return score;
-
-        final var moveList = Movegen.pseudoLegal(position)
-            .stream()
-            .filter(x -> x.isEnpassantCapture() || position.getPieceAt(x.getTo()) != null)
-            .collect(Collectors.toList());
-
-        var pvFound = false;
-        var legalCount = 0;
-        Move bestMove = null;
-        for (final var move : new OrderedMoveList(position, moveList)) {
-            final var snapshot = Make.run(position, move);
-            if (Movegen.opponentKingIsAttacked(position)) {
-                Unmake.run(position, snapshot);
-                continue;
-            }
-            legalCount++;
-            history.add(snapshot);
-            score = -qsearch(-beta, -alpha);
-            history.remove(history.size() - 1);
-            Unmake.run(position, snapshot);
-
-            if (config.isStopped()) return 0;
-
-            if (score >= beta) return beta;
-            if (score > alpha) {
-                alpha = score;
-                bestMove = move;
-                pvFound = true;
-            }
-        }
-
-        if (pvFound) pvTable.put(Zobrist.hash(position), bestMove);
-
-        return alpha;
+    /** Sets the number of threads, including the calling one, that the next searches use, clamped to 1 - MAX_THREADS. */
+    public void setThreads(final int threads) {
+        final var count = Math.max(1, Math.min(threads, MAX_THREADS));
+        while (workers.size() > count)
+            workers.remove(workers.size() - 1);
+        while (workers.size() < count)
+            workers.add(new SearchWorker(workers.size(), new Position(), config));
     }
 
-    private int alphaBeta(final int depth, final int targetDepth, int alpha, final int beta) {
-        nodesSearched++;
+    private void reset() {
+        table.newSearch();
+        for (final var worker : workers)
+            worker.reset(position, table);
+    }
 
-        if (depth >= targetDepth) return qsearch(alpha, beta);
-        if ((nodesSearched & 2047) == 0) {
-            if (System.currentTimeMillis() > config.getStopTime()) config.stop();
-        }
+    public void make(final String move) {
+        Make.run(position, move, Movegen.legal(position));
+    }
 
-        if (isRepetition() || position.getHalfmoveClock() >= 100) return Evaluator.DRAW_VALUE;
+    private long getNodes() {
+        var nodes = 0L;
+        for (final var worker : workers)
+            nodes += worker.getNodes();
+        return nodes;
+    }
 
-        final var key = Zobrist.hash(position);
-        final var moveList = OrderedMoveList.pseudoLegal(position);
+    public Move search() {
+        reset();
+        config.init();
 
-        final var pvMoveIndex = moveList.indexOf(pvTable.get(key));
-        if (pvMoveIndex != -1) {
-            moveList.setScore(pvMoveIndex, 1000);
+        final var helpers = new ArrayList<Thread>();
+        for (final var worker : workers.subList(1, workers.size())) {
+            final var thread = new Thread(worker, "search-helper-" + helpers.size());
+            thread.setDaemon(true);
+            thread.start();
+            helpers.add(thread);
         }
 
-        for (var i = 0; i < 2; i++) {
-            final var index = moveList.indexOf(killers[depth][i]);
-            if (index != -1) moveList.setScore(index, 100 + 2 - i);
+        final var main = workers.get(0);
+        for (var i = 1; i <= config.getMaxDepth(); i++) {
+            if (!main.iterate(i)) break;
+            printInfo(main);
         }
 
-        var pvFound = false;
-        var legalCount = 0;
-        Move bestMove = null;
-        for (final var move : moveList) {
-            final var snapshot = Make.run(position, move);
-            if (Movegen.opponentKingIsAttacked(position)) {
-                Unmake.run(position, snapshot);
-                continue;
-            }
-            legalCount++;
-            history.add(snapshot);
-            final var score = -alphaBeta(depth + 1, targetDepth, -beta, -alpha);
-            history.remove(history.size() - 1);
-            Unmake.run(position, snapshot);
-
-            if (config.isStopped()) return 0;
-
-            if (score >= beta) {
-                if (!move.isEnpassantCapture() && position.getPieceAt(move.getTo()) == null) {
-                    killers[depth][1] = killers[depth][0];
-                    killers[depth][0] = move;
-                }
-                return beta;
-            }
-            if (score > alpha) {
-                alpha = score;
-                bestMove = move;
-                pvFound = true;
+        config.stop();
+        for (final var thread : helpers) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for search threads", e);
             }
         }
 
-        if (legalCount == 0) {
-            return (Movegen.currentKingIsAttacked(position))
-                ? Evaluator.MATE_VALUE + depth
-                : Evaluator.DRAW_VALUE;
+        var best = main;
+        for (final var worker : workers) {
+            if (worker.getCompletedDepth() > best.getCompletedDepth()) best = worker;
         }
+        if (best != main) printInfo(best);
 
-        if (pvFound) pvTable.put(key, bestMove);
-
-        return alpha;
+        final var bestMove = best.getBestMove() == PackedMove.NONE ? null : PackedMove.toMove(best.getBestMove());
+        System.out.println("bestmove " + bestMove);
+        return bestMove;
     }
 
-    public Move search() {
-        reset();
-        config.init();
-
-        var bestScore = 0;
-        Move bestMove = null;
-        for (var i = 1; i <= config.getMaxDepth(); i++) {
-            bestScore = alphaBeta(0, i, Evaluator.WORST_VALUE, Evaluator.BEST_VALUE);
-
-            if (config.isStopped()) break;
-
-            final var pvLine = pvTable.getLine(position, i);
-            bestMove = pvLine.get(0);
-            System.out.println(
-                String.format(
-                    "info score cp %d depth %d nodes %d time %d pv %s",
-                    bestScore, i, nodesSearched, System.currentTimeMillis() - config.getStartTime(), pvLine
-                )
-            );
+    private void printInfo(final SearchWorker worker) {
+        final var pvLine = new ArrayList<Move>();
+        final var move = worker.getBestMove();
+        if (move != PackedMove.NONE) {
+            pvLine.add(PackedMove.toMove(move));
+            Make.run(position, move);
+            pvLine.addAll(table.getLine(position, worker.getCompletedDepth() - 1));
+            Unmake.run(position);
         }
-        System.out.println("bestmove " + bestMove);
-        return bestMove;
+
+        System.out.println(
+            String.format(
+                "info score cp %d depth %d nodes %d time %d pv %s",
+                worker.getBestScore(), worker.getCompletedDepth(), getNodes(),
+                System.currentTimeMillis() - config.getStartTime(), pvLine
+            )
+        );
     }
 }
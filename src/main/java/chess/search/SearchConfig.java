@@ -5,7 +5,8 @@ public class SearchConfig {
     private long searchTime;
     private long startTime;
     private long stopTime;
-    private boolean stopped;
+    // Set by whichever search thread runs out of time, and read by all of them
+    private volatile boolean stopped;
 
     public int getMaxDepth() {
         return maxDepth;
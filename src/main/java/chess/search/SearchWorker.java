@@ -0,0 +1,252 @@
+package chess.search;
+
+import chess.basictypes.Position;
+import chess.evaluation.Evaluator;
+import chess.move.Make;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+import chess.move.Unmake;
+
+import java.util.Arrays;
+
+/**
+ * One thread of a {@link Search}: its own position, killer moves, move stacks and node count, searching with the
+ * transposition table and stop flag every thread shares. Worker 0 is the main thread and searches every depth;
+ * helpers skip some depths in a pattern that depends on their id, so that the threads spread over neighbouring depths
+ * and fill the table for each other instead of all searching the same tree.
+ */
+class SearchWorker implements Runnable {
+    // The pattern Stockfish used for its lazy SMP: helper i alternately searches and skips runs of SKIP_SIZE depths
+    private static final int[] SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+    private static final int[] SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+    private static final int NO_CUTOFF = Integer.MIN_VALUE;
+
+    private final int id;
+    private final Position position;
+    private final SearchConfig config;
+    private final int[][] killers = new int[Search.MAX_DEPTH + 1][2];
+    private final int[] moveStack = new int[Search.MAX_PLY * Movegen.MAX_MOVES];
+    private final int[] scoreStack = new int[Search.MAX_PLY * Movegen.MAX_MOVES];
+    private final OrderedMoveList[] moveLists = new OrderedMoveList[Search.MAX_PLY];
+    private final MovePicker[] movePickers = new MovePicker[Search.MAX_PLY];
+    private TranspositionTable table;
+
+    private long nodesSearched;
+    // A copy of nodesSearched for other threads to read while this one searches, refreshed every 2048 nodes
+    private volatile long publishedNodes;
+    private int completedDepth;
+    private int bestScore;
+    private int bestMove;
+    private int rootBestMove;
+
+    SearchWorker(final int id, final Position position, final SearchConfig config) {
+        this.id = id;
+        this.position = position;
+        this.config = config;
+        for (var i = 0; i < Search.MAX_PLY; i++) {
+            moveLists[i] = new OrderedMoveList(moveStack, scoreStack);
+            movePickers[i] = new MovePicker(moveStack, scoreStack);
+        }
+    }
+
+    /** Returns the nodes searched so far; exact once the worker has finished, approximate while it runs. */
+    long getNodes() {
+        return publishedNodes;
+    }
+
+    /** Returns the deepest iteration this worker completed in the current search, 0 if none. */
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    int getBestScore() {
+        return bestScore;
+    }
+
+    /** Returns the best root move of the deepest completed iteration, as a packed move. */
+    int getBestMove() {
+        return bestMove;
+    }
+
+    /** Prepares for a new search of {@code root}, which a helper copies and the main worker searches in place. */
+    void reset(final Position root, final TranspositionTable table) {
+        if (position != root) position.copyFrom(root);
+        this.table = table;
+        for (final var inner : killers)
+            Arrays.fill(inner, PackedMove.NONE);
+        nodesSearched = 0;
+        publishedNodes = 0;
+        completedDepth = 0;
+        bestScore = 0;
+        bestMove = PackedMove.NONE;
+        rootBestMove = PackedMove.NONE;
+    }
+
+    /** Searches one iteration to {@code depth} and returns whether it completed before the search was stopped. */
+    boolean iterate(final int depth) {
+        final var score = alphaBeta(0, depth, Evaluator.WORST_VALUE, Evaluator.BEST_VALUE, 0);
+        publishedNodes = nodesSearched;
+        if (config.isStopped()) return false;
+
+        completedDepth = depth;
+        bestScore = score;
+        bestMove = rootBestMove;
+        return true;
+    }
+
+    /** Runs a helper's iterative deepening until the maximum depth or until the search is stopped. */
+    @Override
+    public void run() {
+        for (var depth = 1; depth <= config.getMaxDepth(); depth++) {
+            if (skips(depth)) continue;
+            if (!iterate(depth)) break;
+        }
+    }
+
+    private boolean skips(final int depth) {
+        if (id == 0) return false;
+        final var i = (id - 1) % SKIP_SIZE.length;
+        return (depth + SKIP_PHASE[i]) / SKIP_SIZE[i] % 2 != 0;
+    }
+
+    private void checkTime() {
+        publishedNodes = nodesSearched;
+        if (System.currentTimeMillis() > config.getStopTime()) config.stop();
+    }
+
+    private int qsearch(final int ply, int alpha, final int beta, final int start) {
+        if ((nodesSearched & 2047) == 0) checkTime();
+
+        nodesSearched++;
+        if (position.isRepetition() || position.getHalfmoveClock() >= 100) return Evaluator.DRAW_VALUE;
+
+        final var key = position.getKey();
+        final var entry = table.probe(key);
+        if (entry != 0L) {
+            final var cutoff = cutoff(entry, 0, ply, alpha, beta);
+            if (cutoff != NO_CUTOFF) return cutoff;
+        }
+
+        var score = Evaluator.run(position);
+        if (ply >= Search.MAX_PLY || position.getUndoCount() >= config.getMaxDepth()) return score;
+
+        // In check there is no standing pat, so every evasion is searched and checkmate is detected.
+        final var inCheck = Movegen.currentKingIsAttacked(position);
+        if (!inCheck) {
+            if (score >= beta) return beta;
+            if (score > alpha) alpha = score;
+        }
+
+        final var end = Movegen.legal(position, inCheck ? Movegen.Filter.ALL : Movegen.Filter.CAPTURES, moveStack, start);
+        if (inCheck && end == start) return Evaluator.MATE_VALUE + ply;
+        final var moveList = moveLists[ply];
+        moveList.init(position, start, end);
+
+        var pvFound = false;
+        var bestMove = PackedMove.NONE;
+        while (moveList.hasNext()) {
+            final var move = moveList.next();
+            Make.run(position, move);
+            score = -qsearch(ply + 1, -beta, -alpha, end);
+            Unmake.run(position);
+
+            if (config.isStopped()) return 0;
+
+            if (score >= beta) {
+                table.store(key, move, TranspositionTable.scoreToTable(beta, ply), 0, TranspositionTable.BOUND_LOWER);
+                return beta;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                pvFound = true;
+            }
+        }
+
+        final var bound = pvFound ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        table.store(key, bestMove, TranspositionTable.scoreToTable(alpha, ply), 0, bound);
+        return alpha;
+    }
+
+    private int alphaBeta(final int depth, final int targetDepth, int alpha, final int beta, final int start) {
+        nodesSearched++;
+
+        if (depth >= targetDepth) return qsearch(depth, alpha, beta, start);
+        if ((nodesSearched & 2047) == 0) checkTime();
+
+        if (position.isRepetition() || position.getHalfmoveClock() >= 100) return Evaluator.DRAW_VALUE;
+
+        // The root never cuts off, so that every iteration leaves a best move behind
+        final var key = position.getKey();
+        final var entry = table.probe(key);
+        if (entry != 0L && depth > 0) {
+            final var cutoff = cutoff(entry, targetDepth - depth, depth, alpha, beta);
+            if (cutoff != NO_CUTOFF) return cutoff;
+        }
+
+        final var movePicker = movePickers[depth];
+        final var hashMove = TranspositionTable.move(entry);
+        movePicker.init(position, start, hashMove, killers[depth][0], killers[depth][1]);
+
+        var pvFound = false;
+        var legalCount = 0;
+        var bestMove = PackedMove.NONE;
+        for (int move; (move = movePicker.next()) != PackedMove.NONE; ) {
+            Make.run(position, move);
+            legalCount++;
+            final var score = -alphaBeta(depth + 1, targetDepth, -beta, -alpha, movePicker.getEnd());
+            Unmake.run(position);
+
+            if (config.isStopped()) return 0;
+
+            if (score >= beta) {
+                if (move != killers[depth][0] && !PackedMove.isEnpassantCapture(move)
+                    && position.getPieceCodeAt(PackedMove.getToIndex(move)) == Position.EMPTY
+                ) {
+                    killers[depth][1] = killers[depth][0];
+                    killers[depth][0] = move;
+                }
+                final var tableScore = TranspositionTable.scoreToTable(beta, depth);
+                table.store(key, move, tableScore, targetDepth - depth, TranspositionTable.BOUND_LOWER);
+                return beta;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                pvFound = true;
+            }
+        }
+
+        if (legalCount == 0) {
+            return (Movegen.currentKingIsAttacked(position))
+                ? Evaluator.MATE_VALUE + depth
+                : Evaluator.DRAW_VALUE;
+        }
+
+        // Other threads store root entries too, so the root's best move is kept here rather than read back
+        if (depth == 0) rootBestMove = bestMove;
+        final var bound = pvFound ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        table.store(key, bestMove, TranspositionTable.scoreToTable(alpha, depth), targetDepth - depth, bound);
+        return alpha;
+    }
+
+    /**
+     * Returns the score a table entry proves for a node searched to {@code remainingDepth} with the given window, or
+     * {@link #NO_CUTOFF} if the entry is too shallow or its bound does not settle the node. Like the rest of the
+     * search, the score is clamped to the window.
+     */
+    private static int cutoff(final long entry, final int remainingDepth, final int ply, final int alpha, final int beta) {
+        if (TranspositionTable.depth(entry) < remainingDepth) return NO_CUTOFF;
+        final var score = TranspositionTable.scoreFromTable(TranspositionTable.score(entry), ply);
+        switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.BOUND_EXACT:
+                return Math.max(alpha, Math.min(score, beta));
+            case TranspositionTable.BOUND_LOWER:
+                return score >= beta ? beta : NO_CUTOFF;
+            case TranspositionTable.BOUND_UPPER:
+                return score <= alpha ? alpha : NO_CUTOFF;
+            default:
+                return NO_CUTOFF;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package chess.search;
+
+import chess.basictypes.Color;
+import chess.basictypes.Piece;
+import chess.basictypes.Position;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+
+/**
+ * Static exchange evaluation: plays out the captures on a move's target square, each side always recapturing with its
+ * least valuable attacker, without making any moves. Sliders behind a piece that captures join in as they are
+ * uncovered, since the attackers are recomputed from the occupancy after each capture.
+ */
+public class StaticExchange {
+    private StaticExchange() {}
+
+    private static final int[] values = { 100, 300, 300, 500, 900, 0 };
+
+    /**
+     * Tests whether the side to move comes out of the exchange started by {@code move} at least {@code threshold}
+     * ahead, assuming either side may stop capturing whenever continuing would lose. Promotions and en passant captures
+     * are not played out and count as breaking even.
+     */
+    public static boolean isAtLeast(final Position position, final int move, final int threshold) {
+        if (PackedMove.isPromotion(move) || PackedMove.isEnpassantCapture(move) || PackedMove.isCastling(move))
+            return threshold <= 0;
+
+        final var from = PackedMove.getFromIndex(move);
+        final var to = PackedMove.getToIndex(move);
+        final var victim = position.getPieceCodeAt(to);
+
+        // swap is what the side to move still has to win for the exchange to reach the threshold
+        var swap = (victim == Position.EMPTY ? 0 : values[Piece.typeCode(victim)]) - threshold;
+        if (swap < 0) return false;
+        swap = values[Piece.typeCode(position.getPieceCodeAt(from))] - swap;
+        if (swap <= 0) return true;
+
+        var occupiedBB = position.getBB() ^ 1L << from ^ 1L << to;
+        var color = position.getCurrentColor();
+        var result = true;
+        while (true) {
+            color = color.invert();
+            final var attackersBB = Movegen.attackersTo(position, to, occupiedBB) & occupiedBB;
+            final var colorAttackersBB = attackersBB & position.getBB(color);
+            if (colorAttackersBB == 0) break;
+            result = !result;
+
+            final var type = leastValuableType(position, color, colorAttackersBB);
+            if (type == Piece.Type.KING)
+                return 0 != (attackersBB & ~colorAttackersBB) ? !result : result;
+            swap = values[type.ordinal()] - swap;
+            if (swap < (result ? 1 : 0)) break;
+            occupiedBB ^= Long.lowestOneBit(colorAttackersBB & position.getBB(color, type));
+        }
+        return result;
+    }
+
+    private static Piece.Type leastValuableType(final Position position, final Color color, final long attackersBB) {
+        for (final var type : Piece.Type.valueList())
+            if (0 != (attackersBB & position.getBB(color, type))) return type;
+        throw new IllegalStateException("No attacker among " + attackersBB);
+    }
+}
@@ -0,0 +1,168 @@
+package chess.search;
+
+import chess.basictypes.HashTables;
+import chess.basictypes.Position;
+import chess.move.Make;
+import chess.move.Move;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+import chess.move.Unmake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed-size transposition table. Each entry is a single long packing the best move (bits 0-16), the score
+ * (bits 17-32), the remaining depth (bits 33-39), the bound type (bits 40-41), the age of the search that stored it
+ * (bits 42-47) and the top 16 bits of the key for verification (bits 48-63). The table is a power-of-two array of
+ * four-entry buckets indexed by the low bits of the key.
+ * <p>
+ * A store overwrites the entry for the same key if there is one, and otherwise the entry that is least useful: shallow
+ * and left over from earlier searches. Since a long is read and written whole on 64-bit JVMs, threads can share a table
+ * without locking; the rare entry that verifies against the wrong position only offers a move, which is checked for
+ * legality before it is played, and a score.
+ */
+public class TranspositionTable {
+    public static final int DEFAULT_SIZE_MB = 16;
+
+    public static final int BOUND_NONE = 0;
+    /** The score is at most the stored score: no move raised alpha. */
+    public static final int BOUND_UPPER = 1;
+    /** The score is at least the stored score: a move reached beta. */
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_EXACT = 3;
+
+    private static final int SCORE_SHIFT = 17;
+    private static final int DEPTH_SHIFT = 33;
+    private static final int BOUND_SHIFT = 40;
+    private static final int AGE_SHIFT = 42;
+    private static final int VERIFICATION_SHIFT = 48;
+    private static final long MOVE_MASK = (1L << SCORE_SHIFT) - 1;
+    private static final int DEPTH_MASK = 0x7f;
+    private static final int AGE_MASK = 0x3f;
+    private static final int ENTRIES_PER_BUCKET = 4;
+
+    private final long[] entries;
+    private final int bucketMask;
+    private int age;
+
+    /** Creates the largest table that fits in {@code megabytes}, see {@link HashTables#bucketCount(int, int)}. */
+    public TranspositionTable(final int megabytes) {
+        final var buckets = HashTables.bucketCount(megabytes, ENTRIES_PER_BUCKET * Long.BYTES);
+        entries = new long[buckets * ENTRIES_PER_BUCKET];
+        bucketMask = buckets - 1;
+    }
+
+    /** Starts a new search, so that the entries of earlier ones are replaced first. */
+    public void newSearch() {
+        age = age + 1 & AGE_MASK;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0L);
+        age = 0;
+    }
+
+    /** Returns the entry stored for the key, or 0 if there is none. */
+    public long probe(final long key) {
+        final var verification = key >>> VERIFICATION_SHIFT;
+        final var i = index(key);
+        for (var j = i; j < i + ENTRIES_PER_BUCKET; j++) {
+            final var entry = entries[j];
+            if (entry >>> VERIFICATION_SHIFT == verification && bound(entry) != BOUND_NONE) return entry;
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores a search result. Mate scores must already be relative to the node, see {@link #scoreToTable(int, int)}.
+     * Storing no move keeps the move of an earlier entry for the same key, which still makes a good first guess.
+     */
+    public void store(final long key, int move, final int score, final int depth, final int bound) {
+        assert score == (short) score && depth >= 0;
+        final var verification = key >>> VERIFICATION_SHIFT;
+        final var i = index(key);
+
+        var replaced = i;
+        var worstValue = Integer.MAX_VALUE;
+        for (var j = i; j < i + ENTRIES_PER_BUCKET; j++) {
+            final var entry = entries[j];
+            if (entry >>> VERIFICATION_SHIFT == verification || entry == 0L) {
+                if (move == PackedMove.NONE && entry != 0L) move = move(entry);
+                replaced = j;
+                break;
+            }
+            final var value = depth(entry) - 4 * (age - age(entry) & AGE_MASK);
+            if (value < worstValue) {
+                worstValue = value;
+                replaced = j;
+            }
+        }
+
+        entries[replaced] = move & MOVE_MASK
+            | (long) (score & 0xffff) << SCORE_SHIFT
+            | (long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) age << AGE_SHIFT
+            | verification << VERIFICATION_SHIFT;
+    }
+
+    public static int move(final long entry) {
+        return (int) (entry & MOVE_MASK);
+    }
+
+    public static int score(final long entry) {
+        return (short) (entry >>> SCORE_SHIFT);
+    }
+
+    public static int depth(final long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    public static int bound(final long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0b11;
+    }
+
+    private static int age(final long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    // A mate score counts plies from the root, but the same node can be reached at other plies, so the table counts
+    // them from the node instead.
+
+    public static int scoreToTable(final int score, final int ply) {
+        if (score >= Search.MATE_BOUND) return score + ply;
+        if (score <= -Search.MATE_BOUND) return score - ply;
+        return score;
+    }
+
+    public static int scoreFromTable(final int score, final int ply) {
+        if (score >= Search.MATE_BOUND) return score - ply;
+        if (score <= -Search.MATE_BOUND) return score + ply;
+        return score;
+    }
+
+    /** Follows the stored best moves from the position, skipping any that are not legal there. */
+    public List<Move> getLine(final Position position, final int maxLength) {
+        final var out = new ArrayList<Move>();
+        var length = 0;
+        for (; length < maxLength; length++) {
+            final var entry = probe(position.getKey());
+            final var move = move(entry);
+            if (move == PackedMove.NONE || !Movegen.isPseudoLegal(position, move) || !Movegen.isLegal(position, move))
+                break;
+            out.add(PackedMove.toMove(move));
+            Make.run(position, move);
+        }
+
+        while (length-- > 0)
+            Unmake.run(position);
+
+        return out;
+    }
+
+    private int index(final long key) {
+        return ((int) key & bucketMask) * ENTRIES_PER_BUCKET;
+    }
+}
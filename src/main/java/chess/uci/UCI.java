@@ -1,9 +1,14 @@
 package chess.uci;
 
 import chess.basictypes.Color;
+import chess.basictypes.HashTables;
 import chess.basictypes.Position;
+import chess.move.ParallelPerft;
+import chess.move.Perft;
+import chess.move.PerftCache;
 import chess.search.Search;
 import chess.search.SearchConfig;
+import chess.search.TranspositionTable;
 
 import java.util.Arrays;
 import java.util.Scanner;
@@ -33,6 +38,11 @@ public class UCI {
     }
 
     private void cmdGo(final String[] args) {
+        if (args.length > 1 && args[1].equals("perft")) {
+            cmdPerft(args);
+            return;
+        }
+
         final var argList = Arrays.asList(args);
 
         var depth = 0;
@@ -73,6 +83,71 @@ public class UCI {
         search.search();
     }
 
+    /** Handles {@code setoption name <id> value <x>}. */
+    private void cmdSetOption(final String[] args) {
+        final var argList = Arrays.asList(args);
+        final var nameIndex = argList.indexOf("name");
+        final var valueIndex = argList.indexOf("value");
+        if (nameIndex == -1 || valueIndex == -1 || valueIndex + 1 >= args.length) {
+            System.out.println("Usage: setoption name <id> value <x>");
+            return;
+        }
+
+        final var name = String.join(" ", argList.subList(nameIndex + 1, valueIndex));
+        final var value = args[valueIndex + 1];
+        try {
+            switch (name.toLowerCase()) {
+                case "hash":
+                    search.setHashSize(Integer.parseInt(value));
+                    break;
+                case "threads":
+                    search.setThreads(Integer.parseInt(value));
+                    break;
+                default:
+                    System.out.println("Unknown option: " + name);
+                    break;
+            }
+        } catch (final NumberFormatException e) {
+            System.out.println("info string Bad value for " + name + ": " + value);
+        }
+    }
+
+    /** Handles {@code go perft <depth> [divide] [threads <n>] [hash <mb>]}. */
+    private void cmdPerft(final String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: go perft <depth> [divide] [threads <n>] [hash <mb>]");
+            return;
+        }
+        final var argList = Arrays.asList(args);
+
+        final var depth = Integer.valueOf(args[2]);
+        final var divide = argList.contains("divide");
+        var threads = 1;
+        var hashMb = 0;
+        int i;
+        if ((i = argList.indexOf("threads")) != -1)
+            threads = Integer.valueOf(argList.get(i + 1));
+        if ((i = argList.indexOf("hash")) != -1)
+            hashMb = Integer.valueOf(argList.get(i + 1));
+
+        final var cache = hashMb > 0 ? new PerftCache(hashMb) : null;
+        final var startTime = System.nanoTime();
+        final long nodes;
+        if (threads > 1) {
+            try (final var perft = new ParallelPerft(position, threads, cache)) {
+                nodes = divide ? perft.divide(depth) : perft.perft(depth);
+            }
+        } else {
+            final var perft = new Perft(position, cache);
+            nodes = divide ? perft.divide(depth) : perft.perft(depth);
+        }
+        final var time = Math.max((System.nanoTime() - startTime) / 1_000_000, 1);
+
+        if (!divide) System.out.println("Nodes searched: " + nodes);
+        System.out.println("info nodes " + nodes + " time " + time + " nps " + nodes * 1000 / time);
+        if (cache != null) System.out.println("info string " + cache);
+    }
+
     public void loop() {
         while (true) {
             final var args = stdin.nextLine().strip().split("\\s+");
@@ -86,12 +161,21 @@ public class UCI {
                 case "uci":
                     System.out.println("id name chess");
                     System.out.println("id author Chester Wu");
+                    System.out.println(
+                        "option name Hash type spin default " + TranspositionTable.DEFAULT_SIZE_MB
+                            + " min " + HashTables.MIN_SIZE_MB + " max " + HashTables.MAX_SIZE_MB
+                    );
+                    System.out.println("option name Threads type spin default 1 min 1 max " + Search.MAX_THREADS);
                     System.out.println("uciok");
                     break;
                 case "isready": System.out.println("readyok"); break;
-                case "ucinewgame": cmdPosition(new String[] { "position", "startpos" }); break;
+                case "ucinewgame":
+                    search.clearHash();
+                    cmdPosition(new String[] { "position", "startpos" });
+                    break;
                 case "position": cmdPosition(args); break;
                 case "go": cmdGo(args); break;
+                case "setoption": cmdSetOption(args); break;
                 case "d": position.print(); break;
                 default: System.out.println("Unknown command"); break;
             }
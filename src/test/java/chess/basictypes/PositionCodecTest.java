@@ -0,0 +1,54 @@
+package chess.basictypes;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PositionCodecTest {
+    private static final List<String> FENS = List.of(
+        Position.STARTPOS_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+        "rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b Kq d3 0 2",
+        "8/8/8/8/8/8/8/K6k b - - 99 300"
+    );
+
+    @Test
+    public void fenRoundTrip() {
+        for (final var fen : FENS)
+            assertEquals(fen, new Position().applyFen(fen).toFen());
+    }
+
+    @Test
+    public void codecRoundTrip() {
+        final var positions = new ArrayList<Position>();
+        for (final var fen : FENS)
+            positions.add(new Position().applyFen(fen));
+
+        final var buffer = ByteBuffer.allocate(PositionCodec.BYTES * positions.size());
+        PositionCodec.encodeAll(positions, buffer);
+        assertEquals(0, buffer.remaining());
+
+        final var decoded = new ArrayList<Position>();
+        PositionCodec.decodeAll(buffer.flip(), position -> decoded.add(new Position(position)));
+        assertEquals(positions.size(), decoded.size());
+        for (var i = 0; i < positions.size(); i++) {
+            assertEquals(FENS.get(i), decoded.get(i).toFen());
+            assertEquals(positions.get(i).getKey(), decoded.get(i).getKey());
+        }
+    }
+
+    @Test
+    public void rejectsHalfmoveClockAboveSixteenBits() {
+        final var position = new Position().applyFen("8/8/8/8/8/8/8/K6k w - - 70000 300");
+        final var buffer = ByteBuffer.allocate(PositionCodec.BYTES);
+        assertThrows(IllegalArgumentException.class, () -> PositionCodec.encode(position, buffer));
+        assertEquals(0, buffer.position());
+    }
+}
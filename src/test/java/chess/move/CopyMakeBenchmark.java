@@ -0,0 +1,49 @@
+package chess.move;
+
+import chess.basictypes.Position;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares make/unmake with copy-make by running both flavours of perft on kiwipete, and measures a bare
+ * {@link Position#copyFrom(Position)}, which is what handing a root position to another thread costs.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=chess.move.CopyMakeBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CopyMakeBenchmark {
+    private static final String KIWIPETE_FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final int DEPTH = 3;
+    private static final int NODES = 97862;
+
+    private final Position position = new Position().applyFen(KIWIPETE_FEN);
+    private final Position copy = new Position();
+    private final Perft perft = new Perft(position);
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public long makeUnmakePerft() {
+        return perft.perft(DEPTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NODES)
+    public long copyMakePerft() {
+        return perft.copyMakePerft(DEPTH);
+    }
+
+    @Benchmark
+    public Position copyPosition() {
+        return copy.copyFrom(position);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
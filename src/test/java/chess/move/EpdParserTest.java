@@ -0,0 +1,92 @@
+package chess.move;
+
+import chess.basictypes.Position;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EpdParserTest {
+    private final EpdParser parser = new EpdParser(true);
+    private final Position position = new Position();
+    private final EpdRecord record = new EpdRecord();
+
+    private String bestMove(final String epd) {
+        parser.parse(epd, position, record);
+        assertEquals(1, record.getBestMoveCount());
+        return PackedMove.toString(record.getBestMove(0));
+    }
+
+    @Test
+    public void disambiguatesSan() {
+        // Knights on b1, f1 and b3 can all reach d2
+        final var fen = "4k3/8/8/8/8/1N6/8/1N2KN2 w - - ";
+        assertEquals("f1d2", bestMove(fen + "bm Nfd2;"));
+        assertEquals("b3d2", bestMove(fen + "bm N3d2;"));
+        assertEquals("b1d2", bestMove(fen + "bm Nb1xd2+;"));
+        assertEquals("b1d2", bestMove(fen + "bm b1d2;"));
+        for (final var ambiguous : new String[] { "Nbd2", "N1d2", "Nd2" })
+            assertThrows(IllegalArgumentException.class, () -> parser.parse(fen + "bm " + ambiguous + ";", position, record));
+    }
+
+    @Test
+    public void readsPawnMovesAndPromotions() {
+        final var fen = "3r3k/4P3/8/8/8/8/3P4/4K3 w - - ";
+        assertEquals("d2d4", bestMove(fen + "bm d4;"));
+        assertEquals("e7d8q", bestMove(fen + "bm exd8=Q+;"));
+        assertEquals("e7e8n", bestMove(fen + "bm e8N;"));
+        assertEquals("e7e8r", bestMove(fen + "bm e7e8r;"));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(fen + "bm e8;", position, record));
+    }
+
+    @Test
+    public void readsCastling() {
+        parser.parse("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - bm O-O-O; am O-O 0-0;", position, record);
+        assertEquals("e1c1", PackedMove.toString(record.getBestMove(0)));
+        assertEquals(2, record.getAvoidMoveCount());
+        assertEquals("e1g1", PackedMove.toString(record.getAvoidMove(0)));
+        assertEquals("e1g1", PackedMove.toString(record.getAvoidMove(1)));
+    }
+
+    @Test
+    public void readsQuotedStringsAndClocks() {
+        parser.parse(
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - id \"test; one\"; c0 \"a;b\"; hmvc 12; fmvn 34; xyz 1;",
+            position, record
+        );
+        assertEquals("test; one", record.getId().toString());
+        assertEquals("a;b", record.getComment().toString());
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 12 34", position.toFen());
+        assertEquals(0, record.getBestMoveCount());
+    }
+
+    @Test
+    public void clearsTheRecordBetweenLines() {
+        parser.parse("4k3/8/8/8/8/8/8/4K3 w - - bm Kd1; id \"first\"; D1 5;", position, record);
+        parser.parse("4k3/8/8/8/8/8/8/4K3 b - - ", position, record);
+        assertEquals(0, record.getBestMoveCount());
+        assertEquals("", record.getId().toString());
+        assertEquals(-1L, record.getPerftCount(1));
+    }
+
+    @Test
+    public void readsLinesFromBuffer() {
+        final var text = "4k3/8/8/8/8/8/8/4K3 w - - bm Kd1;\r\n\n  \n4k3/8/8/8/8/8/3P4/4K3 w - - 0 1 D1 7; D2 35\n";
+        final var buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+
+        assertTrue(parser.parse(buffer, position, record));
+        assertEquals("e1d1", PackedMove.toString(record.getBestMove(0)));
+
+        assertTrue(parser.parse(buffer, position, record));
+        assertEquals("4k3/8/8/8/8/8/3P4/4K3 w - - 0 1", position.toFen());
+        assertEquals(2, record.getMaxPerftDepth());
+        assertEquals(35L, record.getPerftCount(2));
+
+        assertFalse(parser.parse(buffer, position, record));
+    }
+}
@@ -0,0 +1,101 @@
+package chess.move;
+
+import chess.basictypes.Bitboard;
+import chess.basictypes.Square;
+
+/**
+ * The kindergarten-style slider lookups that {@link Motions} used before switching to magic bitboards. Kept as the
+ * baseline for {@link SliderAttacksBenchmark}.
+ */
+class KindergartenAttacks {
+    static long rookAttacks(final int square, final long occupied) {
+        return rankAttacks(square, occupied) | fileAttacks(square, occupied);
+    }
+
+    static long bishopAttacks(final int square, final long occupied) {
+        return diagAttacks(square, occupied) | adiagAttacks(square, occupied);
+    }
+
+    private static long rankAttacks(final int square, final long occupied) {
+        final var rayMask = Bitboard.rank(square >>> 3);
+        final var occupied6Bits
+                = (occupied & rayMask & ~Bitboard.file(7))
+                >>> (1 + Long.numberOfTrailingZeros(rayMask));
+        return rankAttacksBySquareAndOccupation[square][(int) occupied6Bits];
+    }
+
+    private static long fileAttacks(final int square, final long occupied) {
+        final var file = square & 0b111;
+        var occupied6Bits = occupied & Bitboard.file(file);
+        occupied6Bits >>>= file;
+        occupied6Bits *= Bitboard.antidiagonal(7); // mirror along diag
+        occupied6Bits &= ~Bitboard.file(7);
+        occupied6Bits >>>= 57;
+        return fileAttacksBySquareAndOccupation[square][(int) occupied6Bits];
+    }
+
+    private static long diagAttacks(final int square, final long occupied) {
+        var occupied6Bits = occupied & Bitboard.diagonal((square & 0b111) + (square >>> 3));
+        occupied6Bits *= Bitboard.file(0); // project onto horizontal
+        occupied6Bits &= ~Bitboard.file(7);
+        occupied6Bits >>>= 57;
+        return diagonalAttacksBySquareAndOccupation[square][(int) occupied6Bits];
+    }
+
+    private static long adiagAttacks(final int square, final long occupied) {
+        var occupied6Bits = occupied & Bitboard.antidiagonal((square >>> 3) + 7 - (square & 0b111));
+        occupied6Bits *= Bitboard.file(0); // project onto horizontal
+        occupied6Bits &= ~Bitboard.file(7);
+        occupied6Bits >>>= 57;
+        return antidiagonalAttacksBySquareAndOccupation[square][(int) occupied6Bits];
+    }
+
+    private static final long[][] rankAttacksBySquareAndOccupation = new long[Square.count()][64];
+    private static final long[][] fileAttacksBySquareAndOccupation = new long[Square.count()][64];
+    private static final long[][] diagonalAttacksBySquareAndOccupation = new long[Square.count()][64];
+    private static final long[][] antidiagonalAttacksBySquareAndOccupation = new long[Square.count()][64];
+    static {
+        // byteAttacks contains 1D attack rays of files/ranks/diagonals when flattened to the bottom rank.
+        // The first index is the attacker's position. The second index is the occupancy of the middle 6 positions.
+        final long[][] byteAttacks = new long[8][64];
+        for (var attacker = 0; attacker < 8; attacker++) {
+            for (var occupied6Bits = 0; occupied6Bits < 64; occupied6Bits++) {
+                final var occupied8Bits = occupied6Bits << 1;
+                var ray = 0L;
+
+                // slide right
+                for (var cursor = attacker + 1; cursor < 8; cursor++) {
+                    final var cursorMask = 1L << cursor;
+                    ray |= cursorMask;
+                    if ((cursorMask & occupied8Bits) != 0) break;
+                }
+
+                // slide left
+                for (var cursor = attacker - 1; cursor >= 0; cursor--) {
+                    final var cursorMask = 1L << cursor;
+                    ray |= cursorMask;
+                    if ((cursorMask & occupied8Bits) != 0) break;
+                }
+
+                byteAttacks[attacker][occupied6Bits] = ray;
+            }
+        }
+
+        for (final var sq : Square.valueList()) {
+            for (var occupied6Bits = 0; occupied6Bits < 64; occupied6Bits++) {
+                rankAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
+                        = byteAttacks[sq.file()][occupied6Bits] << 8 * sq.rank();
+
+                fileAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
+                        = (byteAttacks[7 - sq.rank()][occupied6Bits] * Bitboard.antidiagonal(7) & Bitboard.file(7))
+                        >>> (7 - sq.file());
+
+                diagonalAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
+                        = byteAttacks[sq.file()][occupied6Bits] * Bitboard.file(0) & Bitboard.diagonal(sq.diagonal());
+
+                antidiagonalAttacksBySquareAndOccupation[sq.ordinal()][occupied6Bits]
+                        = byteAttacks[sq.file()][occupied6Bits] * Bitboard.file(0) & Bitboard.antidiagonal(sq.antidiagonal());
+            }
+        }
+    }
+}
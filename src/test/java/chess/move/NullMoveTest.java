@@ -0,0 +1,46 @@
+package chess.move;
+
+import chess.basictypes.Position;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NullMoveTest {
+    private static final String EP_FEN = "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3";
+
+    @Test
+    public void undoRestoresThePosition() {
+        final var position = new Position().applyFen(EP_FEN);
+        final var key = position.getKey();
+        final var epIndex = position.getEpIndex();
+
+        Make.runNull(position);
+        assertEquals(Position.NO_SQUARE, position.getEpIndex());
+        assertNotEquals(key, position.getKey());
+
+        Unmake.runNull(position);
+        assertEquals(key, position.getKey());
+        assertEquals(epIndex, position.getEpIndex());
+        assertEquals(EP_FEN, position.toFen());
+    }
+
+    @Test
+    public void passingTwiceIsNotARepetition() {
+        final var position = new Position().applyFen(Position.STARTPOS_FEN);
+        Make.runNull(position);
+        Make.runNull(position);
+        assertEquals(new Position().applyFen(Position.STARTPOS_FEN).getKey(), position.getKey());
+        assertFalse(position.isRepetition());
+    }
+
+    @Test
+    public void movingBackAndForthIsARepetition() {
+        final var position = new Position().applyFen(Position.STARTPOS_FEN);
+        for (final var move : new String[] { "g1f3", "g8f6", "f3g1", "f6g8" })
+            Make.run(position, move, Movegen.legal(position));
+        assertTrue(position.isRepetition());
+    }
+}
@@ -3,6 +3,10 @@ package chess.move;
 import chess.basictypes.Position;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -27,6 +31,12 @@ class PerftTest {
             );
             assertEquals(expected, actual);
         }
+
+        final var depth = (int) Math.min(MAX_DEPTH, expectedNodesByDepth.length - 1);
+        final var threads = Runtime.getRuntime().availableProcessors();
+        try (final var parallelRunner = new ParallelPerft(new Position().applyFen(initialFen), threads)) {
+            assertEquals(expectedNodesByDepth[depth], parallelRunner.perft(depth));
+        }
     }
 
 
@@ -81,4 +91,39 @@ class PerftTest {
     }
 
     //endregion
+
+    // Kiwipete's depth 5 tree has millions of interior nodes for the 65536 entries of a 1 MB cache, so entries are
+    // replaced constantly, and the depth 4 run then starts from a cache full of deeper counts
+    @Test
+    public void smallCache() {
+        final var fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        final var cache = new PerftCache(1);
+        assertEquals(193690690L, new Perft(new Position().applyFen(fen), cache).perft(5));
+        assertEquals(4085603L, new Perft(new Position().applyFen(fen), cache).perft(4));
+
+        final var threads = Runtime.getRuntime().availableProcessors();
+        try (final var parallelRunner = new ParallelPerft(new Position().applyFen(fen), threads, new PerftCache(1))) {
+            assertEquals(193690690L, parallelRunner.perft(5));
+        }
+    }
+
+    // Every other run counts the last ply with Movegen.countLegal; this one makes and unmakes the leaf moves
+    @Test
+    public void withoutBulkCounting() {
+        final var perftRunner = new Perft(new Position().applyFen(
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"
+        ));
+        perftRunner.setBulkCounting(false);
+        assertEquals(2039L, perftRunner.perft(2));
+        assertEquals(4085603L, perftRunner.perft(4));
+    }
+
+    @Test
+    public void suite() throws IOException {
+        final var threads = Runtime.getRuntime().availableProcessors();
+        final var stream = PerftTest.class.getResourceAsStream("/perftsuite.epd");
+        try (final var reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.US_ASCII))) {
+            assertEquals(0, new PerftSuite((int) MAX_DEPTH, threads).run(reader, System.out));
+        }
+    }
 }
\ No newline at end of file
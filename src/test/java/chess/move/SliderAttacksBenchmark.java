@@ -0,0 +1,82 @@
+package chess.move;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the magic bitboard slider lookups in {@link Motions} with the kindergarten lookups they replaced. Each
+ * invocation looks up every square against a batch of random occupancies.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=chess.move.SliderAttacksBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SliderAttacksBenchmark {
+    private final long[] occupancies = new long[64];
+
+    @Setup
+    public void setup() {
+        final var rng = new Random(1);
+        for (var i = 0; i < occupancies.length; i++)
+            occupancies[i] = rng.nextLong() & rng.nextLong();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void magicRook(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(Motions.rookAttacks(sq, occupied));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void kindergartenRook(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(KindergartenAttacks.rookAttacks(sq, occupied));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void magicBishop(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(Motions.bishopAttacks(sq, occupied));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void kindergartenBishop(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(KindergartenAttacks.bishopAttacks(sq, occupied));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void magicQueen(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(Motions.queenAttacks(sq, occupied));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(64 * 64)
+    public void kindergartenQueen(final Blackhole bh) {
+        for (final var occupied : occupancies)
+            for (var sq = 0; sq < 64; sq++)
+                bh.consume(KindergartenAttacks.rookAttacks(sq, occupied) | KindergartenAttacks.bishopAttacks(sq, occupied));
+    }
+
+    public static void main(final String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
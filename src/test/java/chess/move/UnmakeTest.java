@@ -0,0 +1,22 @@
+package chess.move;
+
+import chess.basictypes.Position;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UnmakeTest {
+    @Test
+    public void restoresLargeHalfmoveClock() {
+        final var fen = "8/8/8/8/8/8/8/K6k w - - 200000 300";
+        final var position = new Position().applyFen(fen);
+        Make.run(position, "a1a2", Movegen.legal(position));
+        assertEquals(200001, position.getHalfmoveClock());
+
+        final var copy = new Position(position);
+        Unmake.run(position);
+        Unmake.run(copy);
+        assertEquals(fen, position.toFen());
+        assertEquals(fen, copy.toFen());
+    }
+}
@@ -0,0 +1,97 @@
+package chess.search;
+
+import chess.basictypes.Position;
+import chess.move.Make;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+import chess.move.Unmake;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class MovePickerTest {
+    // The positions of PerftTest
+    private static final List<String> FENS = List.of(
+        Position.STARTPOS_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+    );
+
+    private final int[] moves = new int[Movegen.MAX_MOVES];
+    private final int[] scores = new int[Movegen.MAX_MOVES];
+    private final MovePicker picker = new MovePicker(moves, scores);
+
+    /**
+     * Checks every position up to two plies deep from each perft position. The moves of the parent position, or of the
+     * next perft position at the root, serve as hash moves and killers that are mostly illegal where they are tried.
+     */
+    @Test
+    public void picksEveryLegalMoveOnce() {
+        for (var i = 0; i < FENS.size(); i++) {
+            final var other = new Position().applyFen(FENS.get((i + 1) % FENS.size()));
+            final var foreign = new int[Movegen.MAX_MOVES];
+            final var foreignEnd = Movegen.legal(other, foreign, 0);
+            walk(new Position().applyFen(FENS.get(i)), 2, Arrays.copyOf(foreign, foreignEnd));
+        }
+    }
+
+    private void walk(final Position position, final int depth, final int[] foreign) {
+        final var legal = new int[Movegen.MAX_MOVES];
+        final var end = Movegen.legal(position, legal, 0);
+        final var expected = Arrays.copyOf(legal, end);
+        Arrays.sort(expected);
+        check(position, expected, foreign);
+
+        if (depth == 0) return;
+        for (var i = 0; i < end; i++) {
+            Make.run(position, legal[i]);
+            walk(position, depth - 1, expected);
+            Unmake.run(position);
+        }
+    }
+
+    private void check(final Position position, final int[] expected, final int[] foreign) {
+        final var none = PackedMove.NONE;
+        final var first = expected.length > 0 ? expected[0] : none;
+        final var last = expected.length > 0 ? expected[expected.length - 1] : none;
+        final var otherForeign = foreign[foreign.length - 1];
+
+        for (final var foreignMove : foreign) {
+            // No hints; legal hints; foreign hints; a hash move that is also a killer; equal killers
+            pick(position, expected, none, none, none);
+            pick(position, expected, first, last, expected.length > 1 ? expected[1] : none);
+            pick(position, expected, foreignMove, foreignMove == otherForeign ? none : otherForeign, foreignMove);
+            pick(position, expected, first, first, foreignMove);
+            pick(position, expected, last, foreignMove, first);
+            pick(position, expected, foreignMove, last, last);
+        }
+    }
+
+    private void pick(
+        final Position position,
+        final int[] expected,
+        final int hashMove,
+        final int killer1,
+        final int killer2
+    ) {
+        picker.init(position, 0, hashMove, killer1, killer2);
+        final var picked = new int[2 * Movegen.MAX_MOVES];
+        var count = 0;
+        for (int move; (move = picker.next()) != PackedMove.NONE; )
+            picked[count++] = move;
+
+        final var actual = Arrays.copyOf(picked, count);
+        Arrays.sort(actual);
+        assertArrayEquals(
+            expected, actual,
+            () -> position.toFen() + " hash " + PackedMove.toString(hashMove)
+                + " killers " + PackedMove.toString(killer1) + " " + PackedMove.toString(killer2)
+        );
+    }
+}
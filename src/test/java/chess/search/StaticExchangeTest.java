@@ -0,0 +1,64 @@
+package chess.search;
+
+import chess.basictypes.Position;
+import chess.move.Movegen;
+import chess.move.PackedMove;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StaticExchangeTest {
+    // Asserts that the exchange started by the move gains exactly the given amount
+    private static void assertGain(final String fen, final String move, final int gain) {
+        final var position = new Position().applyFen(fen);
+        final var moves = new int[Movegen.MAX_MOVES];
+        final var end = Movegen.legal(position, moves, 0);
+        for (var i = 0; i < end; i++) {
+            if (!PackedMove.toString(moves[i]).equals(move)) continue;
+            assertTrue(StaticExchange.isAtLeast(position, moves[i], gain), move + " gains less than " + gain);
+            assertFalse(StaticExchange.isAtLeast(position, moves[i], gain + 1), move + " gains more than " + gain);
+            return;
+        }
+        throw new AssertionError(move + " is not legal in " + fen);
+    }
+
+    @Test
+    public void xrayRecapture() {
+        // Rxd5 Rxd5 Rxd5: the second rook only attacks d5 once the first has left the file
+        assertGain("3r2k1/8/8/3p4/8/8/3R4/3R2K1 w - - 0 1", "d2d5", 100);
+    }
+
+    @Test
+    public void losingCapture() {
+        assertGain("4k3/8/2p5/3p4/8/8/8/3QK3 w - - 0 1", "d1d5", -800);
+    }
+
+    @Test
+    public void defendedButWinningCapture() {
+        assertGain("4k3/8/2p5/3n4/4P3/8/8/4K3 w - - 0 1", "e4d5", 200);
+    }
+
+    @Test
+    public void undefendedCapture() {
+        assertGain("4k3/8/8/3r4/8/8/8/3RK3 w - - 0 1", "d1d5", 500);
+    }
+
+    @Test
+    public void kingCannotRecaptureADefendedPiece() {
+        // Qxf7+ Kxf7 would walk into the bishop, so the king cannot take back and the pawn is simply won
+        assertGain("4k3/5p2/8/8/2B5/8/8/4KQ2 w - - 0 1", "f1f7", 100);
+    }
+
+    // En passant captures and promotions are not played out and count as breaking even
+
+    @Test
+    public void enPassant() {
+        assertGain("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 2", "e5d6", 0);
+    }
+
+    @Test
+    public void promotionCapture() {
+        assertGain("3r2k1/4P3/8/8/8/8/8/4K3 w - - 0 1", "e7d8q", 0);
+    }
+}
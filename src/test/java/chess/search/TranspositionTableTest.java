@@ -0,0 +1,91 @@
+package chess.search;
+
+import chess.evaluation.Evaluator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TranspositionTableTest {
+    private static final int MOVE = 0x1234;
+
+    // Keys that share a bucket and differ only in the verification bits
+    private static long key(final int tag) {
+        return (long) tag << 48 | 0x5a5aL;
+    }
+
+    @Test
+    public void storeAndProbe() {
+        final var table = new TranspositionTable(1);
+        table.store(key(1), MOVE, -321, 9, TranspositionTable.BOUND_LOWER);
+
+        final var entry = table.probe(key(1));
+        assertEquals(MOVE, TranspositionTable.move(entry));
+        assertEquals(-321, TranspositionTable.score(entry));
+        assertEquals(9, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.BOUND_LOWER, TranspositionTable.bound(entry));
+    }
+
+    @Test
+    public void rejectsEntryOfAnotherKey() {
+        final var table = new TranspositionTable(1);
+        table.store(key(1), MOVE, 0, 3, TranspositionTable.BOUND_EXACT);
+        assertEquals(0L, table.probe(key(2)));
+        assertNotEquals(0L, table.probe(key(1)));
+    }
+
+    @Test
+    public void storingNoMoveKeepsTheOldMove() {
+        final var table = new TranspositionTable(1);
+        table.store(key(1), MOVE, 0, 3, TranspositionTable.BOUND_LOWER);
+        table.store(key(1), 0, 50, 4, TranspositionTable.BOUND_UPPER);
+
+        final var entry = table.probe(key(1));
+        assertEquals(MOVE, TranspositionTable.move(entry));
+        assertEquals(50, TranspositionTable.score(entry));
+        assertEquals(4, TranspositionTable.depth(entry));
+    }
+
+    @Test
+    public void replacesTheShallowestEntry() {
+        final var table = new TranspositionTable(1);
+        final int[] depths = { 5, 2, 7, 4 };
+        for (var i = 0; i < depths.length; i++)
+            table.store(key(i + 1), MOVE, 0, depths[i], TranspositionTable.BOUND_EXACT);
+
+        table.store(key(9), MOVE, 0, 1, TranspositionTable.BOUND_EXACT);
+        assertEquals(0L, table.probe(key(2)));
+        for (final var tag : new int[] { 1, 3, 4, 9 })
+            assertNotEquals(0L, table.probe(key(tag)));
+    }
+
+    @Test
+    public void replacesOldEntriesFirst() {
+        final var table = new TranspositionTable(1);
+        table.store(key(1), MOVE, 0, 10, TranspositionTable.BOUND_EXACT);
+        for (var i = 0; i < 3; i++)
+            table.newSearch();
+        for (var tag = 2; tag <= 4; tag++)
+            table.store(key(tag), MOVE, 0, tag + 1, TranspositionTable.BOUND_EXACT);
+
+        table.store(key(9), MOVE, 0, 1, TranspositionTable.BOUND_EXACT);
+        assertEquals(0L, table.probe(key(1)));
+        for (final var tag : new int[] { 2, 3, 4, 9 })
+            assertNotEquals(0L, table.probe(key(tag)));
+    }
+
+    @Test
+    public void mateScoresCountPliesFromTheNode() {
+        // Mate in 3 plies from a node at ply 5, so 8 plies from the root, reached again at ply 9
+        final var mate = -Evaluator.MATE_VALUE - 8;
+        final var stored = TranspositionTable.scoreToTable(mate, 5);
+        assertEquals(-Evaluator.MATE_VALUE - 3, stored);
+        assertEquals(-Evaluator.MATE_VALUE - 12, TranspositionTable.scoreFromTable(stored, 9));
+        assertEquals(-mate, TranspositionTable.scoreFromTable(TranspositionTable.scoreToTable(-mate, 5), 5));
+
+        for (final var score : new int[] { 0, 250, -Search.MATE_BOUND + 1, Search.MATE_BOUND - 1 }) {
+            assertEquals(score, TranspositionTable.scoreToTable(score, 7));
+            assertEquals(score, TranspositionTable.scoreFromTable(score, 7));
+        }
+    }
+}